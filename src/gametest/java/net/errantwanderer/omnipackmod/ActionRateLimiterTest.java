@@ -0,0 +1,87 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.UUID;
+
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * ActionRateLimiter's token bucket on a clock the test advances: a full burst, then refusals
+ * until time refills a token, refill capped at the burst, buckets kept per player, and no
+ * limit at all when the rate is 0.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class ActionRateLimiterTest {
+    private static final int RATE = 10;
+    private static final int BURST = 5;
+    private static final long MILLIS = 1_000_000L;
+
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("rate_limit"));
+        event.registerTest(id("rate_limit_burst_then_refill"), ActionRateLimiterTest::burstThenRefill,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void burstThenRefill(GameTestHelper helper) {
+        ActionRateLimiter limiter = new ActionRateLimiter();
+        UUID player = new UUID(19L, 1L);
+        UUID other = new UUID(19L, 2L);
+        long start = 1_000L * MILLIS;
+
+        helper.assertTrue(acquired(limiter, player, start, BURST) == BURST,
+                Component.literal("a fresh bucket should allow the whole burst of " + BURST));
+        helper.assertTrue(!limiter.tryAcquire(player, start, RATE, BURST),
+                Component.literal("the action after the burst should be refused"));
+        helper.assertTrue(limiter.getRefusedActions() == 1L,
+                Component.literal("expected 1 refused action, counted " + limiter.getRefusedActions()));
+
+        // one token per 100 ms at 10/s
+        helper.assertTrue(!limiter.tryAcquire(player, start + 50L * MILLIS, RATE, BURST),
+                Component.literal("half a token's worth of time should not allow an action"));
+        helper.assertTrue(limiter.tryAcquire(player, start + 100L * MILLIS, RATE, BURST),
+                Component.literal("100 ms should have refilled one token"));
+        helper.assertTrue(!limiter.tryAcquire(player, start + 100L * MILLIS, RATE, BURST),
+                Component.literal("only one token should have been refilled"));
+
+        // a long pause refills no more than the burst
+        long later = start + 60_000L * MILLIS;
+        helper.assertTrue(acquired(limiter, player, later, BURST + 3) == BURST,
+                Component.literal("refill should be capped at the burst of " + BURST));
+
+        helper.assertTrue(limiter.tryAcquire(other, later, RATE, BURST),
+                Component.literal("another player's bucket should be untouched"));
+
+        limiter.forget(player);
+        helper.assertTrue(acquired(limiter, player, later, BURST) == BURST,
+                Component.literal("a forgotten player should start with a full burst"));
+
+        long refused = limiter.getRefusedActions();
+        helper.assertTrue(acquired(limiter, player, later, 100, 0) == 100 && limiter.getRefusedActions() == refused,
+                Component.literal("a rate of 0 should disable the limit"));
+        helper.succeed();
+    }
+
+    private static int acquired(ActionRateLimiter limiter, UUID player, long now, int attempts) {
+        return acquired(limiter, player, now, attempts, RATE);
+    }
+
+    private static int acquired(ActionRateLimiter limiter, UUID player, long now, int attempts, int rate) {
+        int allowed = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (limiter.tryAcquire(player, now, rate, BURST)) allowed++;
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,181 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.UUID;
+
+import com.mojang.authlib.GameProfile;
+
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.common.util.FakePlayerFactory;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * Two members writing the same shared slot from the same base version: the second write is
+ * merged by its count delta when that is well defined, and otherwise rejected and undone in
+ * the requester's menu, so no items are created or lost either way. A member's own writes in
+ * a row are not conflicts.
+ *
+ * Both writes are queued before either is applied, as with two detections in one tick.
+ * Drives a bare SharedInventoryManager (no initOnServerStart), so nothing touches the world.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class ConcurrentWriteTest {
+    private static final int SLOT = 0;
+
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("concurrent_writes"));
+        event.registerTest(id("concurrent_takes_merge"), ConcurrentWriteTest::concurrentTakesMerge,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+        event.registerTest(id("rejected_take_is_undone"), ConcurrentWriteTest::rejectedTakeIsUndone,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+        event.registerTest(id("rejected_swap_is_undone"), ConcurrentWriteTest::rejectedSwapIsUndone,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+        event.registerTest(id("own_writes_are_sequential"), ConcurrentWriteTest::ownWritesAreSequential,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void concurrentTakesMerge(GameTestHelper helper) {
+        ServerPlayer a = member(helper, 1L);
+        ServerPlayer b = member(helper, 2L);
+        SharedInventoryManager manager = managerWithCobblestone(a, b);
+
+        // A takes 24, B takes 14, both from 64
+        a.getInventory().setItem(SLOT, new ItemStack(Items.COBBLESTONE, 40));
+        b.getInventory().setItem(SLOT, new ItemStack(Items.COBBLESTONE, 50));
+        detectBoth(manager, a, b);
+
+        ItemStack shared = manager.getSharedStack(SLOT);
+        helper.assertTrue(shared.is(Items.COBBLESTONE) && shared.getCount() == 26,
+                Component.literal("expected 26 cobblestone after merging both takes, got " + shared));
+        helper.assertTrue(manager.getMetrics().conflictingWrites() == 1L && manager.getMetrics().rejectedWrites() == 0L,
+                Component.literal("expected one merged conflict, got " + manager.getMetrics().conflictingWrites()
+                        + " conflicts and " + manager.getMetrics().rejectedWrites() + " rejected"));
+
+        release(manager, a, b);
+        helper.succeed();
+    }
+
+    private static void rejectedTakeIsUndone(GameTestHelper helper) {
+        ServerPlayer a = member(helper, 3L);
+        ServerPlayer b = member(helper, 4L);
+        SharedInventoryManager manager = managerWithCobblestone(a, b);
+
+        // both pick up the whole stack
+        pickUp(a);
+        pickUp(b);
+        detectBoth(manager, a, b);
+
+        helper.assertTrue(manager.getMetrics().rejectedWrites() == 1L,
+                Component.literal("expected B's take to be rejected, " + manager.getMetrics().rejectedWrites() + " rejected"));
+        helper.assertTrue(manager.getSharedStack(SLOT).isEmpty(),
+                Component.literal("shared slot should be empty, holds " + manager.getSharedStack(SLOT)));
+        helper.assertTrue(a.containerMenu.getCarried().getCount() == 64,
+                Component.literal("A should keep the 64 it took, carries " + a.containerMenu.getCarried()));
+        helper.assertTrue(b.containerMenu.getCarried().isEmpty(),
+                Component.literal("B's take was rejected but B still carries " + b.containerMenu.getCarried()));
+        helper.assertTrue(b.getInventory().getItem(SLOT).isEmpty(),
+                Component.literal("B's slot was not reset: " + b.getInventory().getItem(SLOT)));
+
+        release(manager, a, b);
+        helper.succeed();
+    }
+
+    private static void rejectedSwapIsUndone(GameTestHelper helper) {
+        ServerPlayer a = member(helper, 5L);
+        ServerPlayer b = member(helper, 6L);
+        SharedInventoryManager manager = managerWithCobblestone(a, b);
+        b.containerMenu.setCarried(new ItemStack(Items.DIRT, 5));
+
+        // A picks up the stack; B swaps its dirt with the same stack
+        pickUp(a);
+        b.getInventory().setItem(SLOT, b.containerMenu.getCarried());
+        b.containerMenu.setCarried(new ItemStack(Items.COBBLESTONE, 64));
+        detectBoth(manager, a, b);
+
+        helper.assertTrue(manager.getMetrics().rejectedWrites() == 1L,
+                Component.literal("expected B's swap to be rejected, " + manager.getMetrics().rejectedWrites() + " rejected"));
+        helper.assertTrue(manager.getSharedStack(SLOT).isEmpty(),
+                Component.literal("shared slot should be empty, holds " + manager.getSharedStack(SLOT)));
+        ItemStack carried = b.containerMenu.getCarried();
+        helper.assertTrue(carried.is(Items.DIRT) && carried.getCount() == 5,
+                Component.literal("B should carry its 5 dirt again, carries " + carried));
+        helper.assertTrue(b.getInventory().getItem(SLOT).isEmpty(),
+                Component.literal("B's slot was not reset: " + b.getInventory().getItem(SLOT)));
+
+        release(manager, a, b);
+        helper.succeed();
+    }
+
+    private static void ownWritesAreSequential(GameTestHelper helper) {
+        ServerPlayer a = member(helper, 7L);
+        ServerPlayer b = member(helper, 8L);
+        SharedInventoryManager manager = managerWithCobblestone(a, b);
+
+        // two separate edits by A; the second is still based on A's first snapshot
+        a.getInventory().setItem(SLOT, new ItemStack(Items.COBBLESTONE, 40));
+        manager.detectAndEnqueueDiff(a.getUUID(), a.getInventory(), DirtySlotTracker.ALL_SLOTS);
+        manager.processQueuedRequests();
+        a.getInventory().setItem(SLOT, new ItemStack(Items.COBBLESTONE, 30));
+        manager.detectAndEnqueueDiff(a.getUUID(), a.getInventory(), DirtySlotTracker.ALL_SLOTS);
+        manager.processQueuedRequests();
+
+        ItemStack shared = manager.getSharedStack(SLOT);
+        helper.assertTrue(shared.getCount() == 30,
+                Component.literal("expected A's last write (30) to win, got " + shared));
+        helper.assertTrue(manager.getMetrics().conflictingWrites() == 0L,
+                Component.literal("A's own writes were treated as " + manager.getMetrics().conflictingWrites() + " conflicts"));
+
+        release(manager, a, b);
+        helper.succeed();
+    }
+
+    private static ServerPlayer member(GameTestHelper helper, long id) {
+        ServerPlayer player = FakePlayerFactory.get(helper.getLevel(), new GameProfile(new UUID(7L, id), "omnipack_writer_" + id));
+        player.getInventory().clearContent();
+        player.containerMenu.setCarried(ItemStack.EMPTY);
+        return player;
+    }
+
+    private static SharedInventoryManager managerWithCobblestone(ServerPlayer a, ServerPlayer b) {
+        SharedInventoryManager manager = new SharedInventoryManager("concurrent_write_test");
+        manager.insertShared(new ItemStack(Items.COBBLESTONE, 64), a.getUUID());
+        // joining copies the shared slots into both inventories at the same version
+        manager.onPlayerJoin(a);
+        manager.onPlayerJoin(b);
+        return manager;
+    }
+
+    private static void pickUp(ServerPlayer player) {
+        player.containerMenu.setCarried(player.getInventory().getItem(SLOT));
+        player.getInventory().setItem(SLOT, ItemStack.EMPTY);
+    }
+
+    private static void detectBoth(SharedInventoryManager manager, ServerPlayer a, ServerPlayer b) {
+        // B's write finds A's pending, applies it first and is then checked against it
+        manager.detectAndEnqueueDiff(a.getUUID(), a.getInventory(), DirtySlotTracker.ALL_SLOTS);
+        manager.detectAndEnqueueDiff(b.getUUID(), b.getInventory(), DirtySlotTracker.ALL_SLOTS);
+        manager.processQueuedRequests();
+    }
+
+    private static void release(SharedInventoryManager manager, ServerPlayer... players) {
+        for (ServerPlayer player : players) {
+            manager.onPlayerLeave(player);
+            player.getInventory().clearContent();
+            player.containerMenu.setCarried(ItemStack.EMPTY);
+        }
+    }
+}
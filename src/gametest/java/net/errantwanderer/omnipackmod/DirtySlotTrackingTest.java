@@ -0,0 +1,75 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.UUID;
+
+import com.mojang.authlib.GameProfile;
+
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.common.util.FakePlayerFactory;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * InventoryMixin's dirty mask against the slots the player inventory has beyond the shared
+ * ones: writes to BODY (41) and SADDLE (42) must not set bits, and detecting with the mask
+ * must not index past the 41 shared slots.
+ *
+ * Drives a bare SharedInventoryManager (no initOnServerStart), so nothing touches the world.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class DirtySlotTrackingTest {
+    private static final int BODY_SLOT = 41;
+    private static final int SADDLE_SLOT = 42;
+
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("dirty_slots"));
+        event.registerTest(id("dirty_slots_beyond_shared"), DirtySlotTrackingTest::writesBeyondSharedSlots,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void writesBeyondSharedSlots(GameTestHelper helper) {
+        ServerPlayer player = FakePlayerFactory.get(helper.getLevel(), new GameProfile(new UUID(0L, 42L), "omnipack_dirty_slots"));
+        Inventory inv = player.getInventory();
+        DirtySlotTracker tracker = (DirtySlotTracker) inv;
+        inv.clearContent();
+
+        SharedInventoryManager manager = new SharedInventoryManager("dirty_slot_test");
+        // first sight of the player only records its baseline
+        manager.detectAndEnqueueDiff(player.getUUID(), inv, tracker.omnipack$consumeDirtyMask());
+
+        inv.setItem(0, new ItemStack(Items.COBBLESTONE, 16));
+        inv.setItem(BODY_SLOT, new ItemStack(Items.IRON_HORSE_ARMOR));
+        inv.setItem(SADDLE_SLOT, new ItemStack(Items.SADDLE));
+        inv.removeItem(SADDLE_SLOT, 1);
+        long mask = tracker.omnipack$consumeDirtyMask();
+
+        helper.assertTrue((mask & ~DirtySlotTracker.ALL_SLOTS) == 0L,
+                Component.literal("dirty mask has bits beyond the shared slots: " + Long.toBinaryString(mask)));
+        helper.assertTrue((mask & 1L) != 0L, Component.literal("slot 0 was written but not marked dirty"));
+
+        // threw ArrayIndexOutOfBoundsException while bits 41/42 could be set
+        manager.detectAndEnqueueDiff(player.getUUID(), inv, mask);
+        manager.processQueuedRequests();
+        helper.assertTrue(manager.countShared(Items.COBBLESTONE) == 16L,
+                Component.literal("slot 0 was not committed: " + manager.countShared(Items.COBBLESTONE) + " cobblestone shared"));
+
+        inv.clearContent();
+        tracker.omnipack$consumeDirtyMask();
+        helper.succeed();
+    }
+}
@@ -0,0 +1,60 @@
+package net.errantwanderer.omnipackmod;
+
+import net.errantwanderer.omnipackmod.metrics.Histogram;
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * Histogram percentiles: the upper bound of the power-of-two bucket holding the rank, capped
+ * at the maximum, with exact count, total, max and mean.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class HistogramTest {
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("histogram"));
+        event.registerTest(id("histogram_percentiles"), HistogramTest::percentiles,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void percentiles(GameTestHelper helper) {
+        Histogram histogram = new Histogram();
+        helper.assertTrue(histogram.percentile(0.5) == 0L && histogram.mean() == 0.0,
+                Component.literal("an empty histogram should report 0"));
+
+        for (long value = 1L; value <= 100L; value++) {
+            histogram.record(value);
+        }
+        helper.assertTrue(histogram.count() == 100L && histogram.total() == 5050L && histogram.max() == 100L
+                        && histogram.mean() == 50.5,
+                Component.literal("exact stats off: count " + histogram.count() + ", total " + histogram.total()
+                        + ", max " + histogram.max() + ", mean " + histogram.mean()));
+        // rank 50 falls in 32..63, rank 99 in 64..127 (capped at the max), rank 1 in 1..1
+        helper.assertTrue(histogram.percentile(0.5) == 63L,
+                Component.literal("expected p50 = 63, got " + histogram.percentile(0.5)));
+        helper.assertTrue(histogram.percentile(0.99) == 100L,
+                Component.literal("expected p99 = 100, got " + histogram.percentile(0.99)));
+        helper.assertTrue(histogram.percentile(0.0) == 1L,
+                Component.literal("expected p0 = 1, got " + histogram.percentile(0.0)));
+
+        histogram.record(-5L);
+        helper.assertTrue(histogram.count() == 101L && histogram.total() == 5050L,
+                Component.literal("a negative value should be recorded as 0"));
+
+        histogram.reset();
+        helper.assertTrue(histogram.count() == 0L && histogram.max() == 0L && histogram.percentile(0.99) == 0L,
+                Component.literal("reset should clear everything"));
+        helper.succeed();
+    }
+}
@@ -0,0 +1,68 @@
+package net.errantwanderer.omnipackmod;
+
+import net.minecraft.core.Holder;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * ItemSlotIndex kept in step through set(): counts per stack and per item, slots with room
+ * left, empty slots, and stacks differing only in components kept apart.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class ItemSlotIndexTest {
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("slot_index"));
+        event.registerTest(id("slot_index_tracks_sets"), ItemSlotIndexTest::tracksSets,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void tracksSets(GameTestHelper helper) {
+        ItemSlotIndex index = new ItemSlotIndex(SharedInventoryManager.SHARED_SLOT_COUNT);
+        ItemStack cobblestone = new ItemStack(Items.COBBLESTONE);
+        ItemStack named = new ItemStack(Items.COBBLESTONE);
+        named.set(DataComponents.CUSTOM_NAME, Component.literal("named"));
+
+        index.set(0, new ItemStack(Items.COBBLESTONE, 64));
+        index.set(2, new ItemStack(Items.COBBLESTONE, 10));
+        index.set(5, named.copyWithCount(3));
+
+        helper.assertTrue(index.count(cobblestone) == 74L && index.count(named) == 3L && index.count(Items.COBBLESTONE) == 77L,
+                Component.literal("counts off: " + index.count(cobblestone) + " plain, " + index.count(named)
+                        + " named, " + index.count(Items.COBBLESTONE) + " in total"));
+        helper.assertTrue(index.nextPartialSlot(cobblestone, 0) == 2,
+                Component.literal("slot 2 is the first plain stack with room, got " + index.nextPartialSlot(cobblestone, 0)));
+        helper.assertTrue(index.nextEmptySlot(0) == 1 && index.emptySlotCount() == SharedInventoryManager.SHARED_SLOT_COUNT - 3,
+                Component.literal("empty slots off: first " + index.nextEmptySlot(0) + ", " + index.emptySlotCount() + " in total"));
+
+        // filling slot 2 removes it from the partial set; replacing slot 0 unlinks the old item
+        index.set(2, new ItemStack(Items.COBBLESTONE, 64));
+        index.set(0, new ItemStack(Items.DIRT, 1));
+        helper.assertTrue(index.nextPartialSlot(cobblestone, 0) == -1 && index.count(cobblestone) == 64L,
+                Component.literal("plain cobblestone should be one full stack, count " + index.count(cobblestone)));
+        helper.assertTrue(index.count(new ItemStack(Items.DIRT)) == 1L,
+                Component.literal("slot 0 should be indexed as dirt now"));
+
+        index.set(5, ItemStack.EMPTY);
+        helper.assertTrue(index.count(named) == 0L && index.nextEmptySlot(3) == 3 && index.nextEmptySlot(5) == 5,
+                Component.literal("emptying slot 5 should unlink the named stack and mark the slot empty"));
+
+        index.clear();
+        helper.assertTrue(index.count(Items.COBBLESTONE) == 0L && index.emptySlotCount() == SharedInventoryManager.SHARED_SLOT_COUNT,
+                Component.literal("clear should empty the index"));
+        helper.succeed();
+    }
+}
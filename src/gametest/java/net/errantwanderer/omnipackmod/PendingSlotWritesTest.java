@@ -0,0 +1,61 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.UUID;
+
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * PendingSlotWrites coalescing: a player's repeated writes to a slot keep the first base and
+ * only move the requested state, while a different player's write starts a new entry.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class PendingSlotWritesTest {
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("pending_writes"));
+        event.registerTest(id("pending_writes_coalesce"), PendingSlotWritesTest::coalesces,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void coalesces(GameTestHelper helper) {
+        PendingSlotWrites pending = new PendingSlotWrites(SharedInventoryManager.SHARED_SLOT_COUNT);
+        UUID a = new UUID(9L, 1L);
+        UUID b = new UUID(9L, 2L);
+        ItemStack base = new ItemStack(Items.COBBLESTONE, 64);
+
+        pending.put(3, a, new ItemStack(Items.COBBLESTONE, 40), base, 7L, 100L);
+        pending.put(3, a, new ItemStack(Items.COBBLESTONE, 30), new ItemStack(Items.COBBLESTONE, 40), 8L, 200L);
+        helper.assertTrue(pending.pendingMask() == 1L << 3,
+                Component.literal("expected only slot 3 pending, mask " + Long.toBinaryString(pending.pendingMask())));
+        helper.assertTrue(pending.requested(3).getCount() == 30 && pending.timestamp(3) == 200L,
+                Component.literal("the later write should replace the requested state, got " + pending.requested(3)));
+        helper.assertTrue(pending.base(3) == base && pending.baseVersion(3) == 7L,
+                Component.literal("the run should keep its first base, got " + pending.base(3) + " v" + pending.baseVersion(3)));
+
+        pending.put(3, b, new ItemStack(Items.COBBLESTONE, 20), new ItemStack(Items.COBBLESTONE, 30), 9L, 300L);
+        helper.assertTrue(b.equals(pending.writer(3)) && pending.baseVersion(3) == 9L,
+                Component.literal("another player's write should start a new entry, writer " + pending.writer(3)));
+
+        pending.put(40, a, ItemStack.EMPTY, new ItemStack(Items.SHIELD), 1L, 300L);
+        pending.remove(3);
+        helper.assertTrue(!pending.isPending(3) && pending.isPending(40) && pending.writer(3) == null,
+                Component.literal("remove should clear only its own slot"));
+        pending.clear();
+        helper.assertTrue(pending.isEmpty(), Component.literal("clear should leave nothing pending"));
+        helper.succeed();
+    }
+}
@@ -0,0 +1,134 @@
+package net.errantwanderer.omnipackmod;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.errantwanderer.omnipackmod.replication.ReplicationTransport;
+import net.errantwanderer.omnipackmod.replication.TcpReplicationTransport;
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * TcpReplicationTransport's handshake over loopback: a replica with the primary's secret
+ * connects and receives frames, one with another secret is never connected on either side.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class ReplicationHandshakeTest {
+    private static final byte[] FRAME = { 4, 2, 0, 1 };
+    // plenty for a loopback handshake, which takes milliseconds
+    private static final int SETTLE_TICKS = 40;
+
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("replication_handshake"));
+        event.registerTest(id("handshake_same_secret_connects"), ReplicationHandshakeTest::sameSecretConnects,
+                new TestData<>(environment, id("empty"), 100, 0, true));
+        event.registerTest(id("handshake_wrong_secret_refused"), ReplicationHandshakeTest::wrongSecretRefused,
+                new TestData<>(environment, id("empty"), 100, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void sameSecretConnects(GameTestHelper helper) {
+        InetSocketAddress address = freeLoopbackAddress();
+        RecordingListener primaryEvents = new RecordingListener();
+        RecordingListener replicaEvents = new RecordingListener();
+        TcpReplicationTransport primary = new TcpReplicationTransport(address, null, "shared secret");
+        TcpReplicationTransport replica = new TcpReplicationTransport(null, address, "shared secret");
+        // the primary greets each peer as soon as it is through the handshake
+        primaryEvents.transport = primary;
+        start(primary, primaryEvents);
+        start(replica, replicaEvents);
+
+        helper.succeedWhen(() -> {
+            helper.assertTrue(primaryEvents.connected.get() == 1 && replicaEvents.connected.get() == 1,
+                    Component.literal("waiting for both sides to connect"));
+            byte[] frame = replicaEvents.frames.peek();
+            helper.assertTrue(frame != null, Component.literal("waiting for the primary's frame"));
+            helper.assertTrue(Arrays.equals(frame, FRAME),
+                    Component.literal("replica received " + Arrays.toString(frame) + " instead of " + Arrays.toString(FRAME)));
+            replica.close();
+            primary.close();
+        });
+    }
+
+    private static void wrongSecretRefused(GameTestHelper helper) {
+        InetSocketAddress address = freeLoopbackAddress();
+        RecordingListener primaryEvents = new RecordingListener();
+        RecordingListener replicaEvents = new RecordingListener();
+        TcpReplicationTransport primary = new TcpReplicationTransport(address, null, "shared secret");
+        TcpReplicationTransport replica = new TcpReplicationTransport(null, address, "another secret");
+        start(primary, primaryEvents);
+        start(replica, replicaEvents);
+
+        helper.runAfterDelay(SETTLE_TICKS, () -> {
+            replica.close();
+            primary.close();
+            helper.assertTrue(primaryEvents.connected.get() == 0,
+                    Component.literal("the primary accepted a replica with the wrong secret"));
+            helper.assertTrue(replicaEvents.connected.get() == 0,
+                    Component.literal("the replica connected with the wrong secret"));
+            helper.succeed();
+        });
+    }
+
+    private static InetSocketAddress freeLoopbackAddress() {
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), probe.getLocalPort());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void start(ReplicationTransport transport, ReplicationTransport.Listener listener) {
+        try {
+            transport.start(listener);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Called on the transport's threads, hence the concurrent fields.
+     */
+    private static final class RecordingListener implements ReplicationTransport.Listener {
+        final AtomicInteger connected = new AtomicInteger();
+        final Queue<byte[]> frames = new ConcurrentLinkedQueue<>();
+        @Nullable
+        volatile ReplicationTransport transport;
+
+        @Override
+        public void onConnected(String peer) {
+            connected.incrementAndGet();
+            ReplicationTransport greeter = transport;
+            if (greeter != null) greeter.send(peer, FRAME);
+        }
+
+        @Override
+        public void onMessage(String peer, byte[] frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public void onDisconnected(String peer) {
+        }
+    }
+}
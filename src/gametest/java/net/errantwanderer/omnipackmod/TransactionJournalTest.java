@@ -0,0 +1,215 @@
+package net.errantwanderer.omnipackmod;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import net.errantwanderer.omnipackmod.persistence.TransactionJournal;
+import net.minecraft.core.Holder;
+import net.minecraft.core.NonNullList;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+
+/**
+ * TransactionJournal on its own, in a temporary directory: replay after the snapshot's
+ * sequence, truncation of a torn tail, rotation with stateAt reaching into the previous
+ * generation, and sequence numbers continuing from the snapshot when the file is new.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class TransactionJournalTest {
+    private static final UUID PLAYER = new UUID(6L, 1L);
+
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("journal"));
+        event.registerTest(id("journal_replays_after_snapshot"), TransactionJournalTest::replaysAfterSnapshot,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+        event.registerTest(id("journal_truncates_torn_tail"), TransactionJournalTest::truncatesTornTail,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+        event.registerTest(id("journal_rotation_keeps_history"), TransactionJournalTest::rotationKeepsHistory,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+        event.registerTest(id("journal_numbers_above_snapshot"), TransactionJournalTest::numbersAboveSnapshot,
+                new TestData<>(environment, id("empty"), 20, 0, true));
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static void replaysAfterSnapshot(GameTestHelper helper) {
+        RegistryAccess registries = helper.getLevel().registryAccess();
+        Path dir = tempDir();
+        try {
+            Path file = dir.resolve("journal.bin");
+            TransactionJournal journal = TransactionJournal.open(file, registries, 0L, nanos -> { });
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 0, new ItemStack(Items.COBBLESTONE, 1), 1L);
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 1, new ItemStack(Items.DIRT, 2), 2L);
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 2, new ItemStack(Items.STONE, 3), 3L);
+            journal.close();
+
+            // the snapshot already holds the first entry
+            TransactionJournal reopened = TransactionJournal.open(file, registries, 1L, nanos -> { });
+            List<Integer> slots = new ArrayList<>();
+            List<ItemStack> stacks = new ArrayList<>();
+            int replayed = reopened.replayAfter(1L, (slot, stack) -> {
+                slots.add(slot);
+                stacks.add(stack);
+            });
+            reopened.close();
+
+            helper.assertTrue(replayed == 2 && slots.equals(List.of(1, 2)),
+                    Component.literal("expected slots [1, 2] replayed, got " + slots));
+            helper.assertTrue(stacks.get(0).is(Items.DIRT) && stacks.get(0).getCount() == 2
+                            && stacks.get(1).is(Items.STONE) && stacks.get(1).getCount() == 3,
+                    Component.literal("replayed stacks differ from the written ones: " + stacks));
+            helper.assertTrue(reopened.lastSequence() == 3L,
+                    Component.literal("expected last sequence 3, got " + reopened.lastSequence()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        helper.succeed();
+    }
+
+    private static void truncatesTornTail(GameTestHelper helper) {
+        RegistryAccess registries = helper.getLevel().registryAccess();
+        Path dir = tempDir();
+        try {
+            Path file = dir.resolve("journal.bin");
+            TransactionJournal journal = TransactionJournal.open(file, registries, 0L, nanos -> { });
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 0, new ItemStack(Items.COBBLESTONE, 1), 1L);
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 1, new ItemStack(Items.DIRT, 2), 2L);
+            journal.close();
+            long intactSize = Files.size(file);
+
+            // a crash mid-append: a length prefix promising more than was written
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 100, 1, 0, 0, 0 }));
+            }
+
+            TransactionJournal reopened = TransactionJournal.open(file, registries, 0L, nanos -> { });
+            int replayed = reopened.replayAfter(0L, (slot, stack) -> { });
+            long lastSeq = reopened.lastSequence();
+            reopened.close();
+
+            helper.assertTrue(Files.size(file) == intactSize,
+                    Component.literal("torn tail not truncated: " + Files.size(file) + " bytes, expected " + intactSize));
+            helper.assertTrue(replayed == 2 && lastSeq == 2L,
+                    Component.literal("expected both intact entries kept, replayed " + replayed + " up to seq " + lastSeq));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        helper.succeed();
+    }
+
+    private static void rotationKeepsHistory(GameTestHelper helper) {
+        RegistryAccess registries = helper.getLevel().registryAccess();
+        Path dir = tempDir();
+        try {
+            Path file = dir.resolve("journal.bin");
+            TransactionJournal journal = TransactionJournal.open(file, registries, 0L, nanos -> { });
+            NonNullList<ItemStack> slots = NonNullList.withSize(2, ItemStack.EMPTY);
+            journal.checkpointIfNeeded(Long.MAX_VALUE, slots, 1000L);
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 0, new ItemStack(Items.COBBLESTONE, 8), 2000L);
+            slots.set(0, new ItemStack(Items.COBBLESTONE, 8));
+            // past the size limit: rotates to journal.bin.old and checkpoints the new file
+            journal.checkpointIfNeeded(0L, slots, 3000L);
+
+            NonNullList<ItemStack> before = NonNullList.withSize(2, ItemStack.EMPTY);
+            boolean beforeFound = journal.stateAt(2500L, before);
+            NonNullList<ItemStack> after = NonNullList.withSize(2, ItemStack.EMPTY);
+            boolean afterFound = journal.stateAt(3500L, after);
+            NonNullList<ItemStack> tooEarly = NonNullList.withSize(2, ItemStack.EMPTY);
+            boolean tooEarlyFound = journal.stateAt(500L, tooEarly);
+            long seqBefore = journal.lastSequence();
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 1, new ItemStack(Items.DIRT, 1), 4000L);
+            long seqAfter = journal.lastSequence();
+            journal.close();
+
+            helper.assertTrue(Files.exists(dir.resolve("journal.bin.old")),
+                    Component.literal("rotation left no journal.bin.old"));
+            helper.assertTrue(beforeFound && before.get(0).is(Items.COBBLESTONE) && before.get(0).getCount() == 8,
+                    Component.literal("state at 2500 should come from the old generation, got " + before));
+            helper.assertTrue(afterFound && after.get(0).is(Items.COBBLESTONE) && after.get(1).isEmpty(),
+                    Component.literal("state at 3500 should be the new checkpoint, got " + after));
+            helper.assertTrue(!tooEarlyFound,
+                    Component.literal("state before the first checkpoint should not be found"));
+            helper.assertTrue(seqAfter == seqBefore + 1L,
+                    Component.literal("sequence did not continue across the rotation: " + seqBefore + " -> " + seqAfter));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        helper.succeed();
+    }
+
+    private static void numbersAboveSnapshot(GameTestHelper helper) {
+        RegistryAccess registries = helper.getLevel().registryAccess();
+        Path dir = tempDir();
+        try {
+            // a new file after the old one was lost or set aside, while the snapshot is at 100
+            Path file = dir.resolve("journal.bin");
+            TransactionJournal journal = TransactionJournal.open(file, registries, 100L, nanos -> { });
+            journal.append(TransactionJournal.PLAYER_WRITE, PLAYER, 0, new ItemStack(Items.COBBLESTONE, 1), 1L);
+            journal.close();
+
+            TransactionJournal reopened = TransactionJournal.open(file, registries, 100L, nanos -> { });
+            int replayed = reopened.replayAfter(100L, (slot, stack) -> { });
+            reopened.close();
+            helper.assertTrue(replayed == 1,
+                    Component.literal("the write after the snapshot was numbered at or below it, replayed " + replayed));
+
+            // an existing file that is behind the snapshot (restored from a backup)
+            TransactionJournal behind = TransactionJournal.open(file, registries, 500L, nanos -> { });
+            long lastSeq = behind.lastSequence();
+            behind.close();
+            helper.assertTrue(lastSeq == 500L,
+                    Component.literal("expected numbering to continue from the snapshot's 500, got " + lastSeq));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        helper.succeed();
+    }
+
+    private static Path tempDir() {
+        try {
+            return Files.createTempDirectory("omnipack_journal_test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.warn("OmniPackMod: could not delete test directory {}: {}", dir, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package net.errantwanderer.omnipackmod.loadtest;
+
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.neoforge.common.util.FakePlayerNetHandler;
+
+/**
+ * Connection stand-in for a load test bot: drops every packet like FakePlayerNetHandler,
+ * but counts them first.
+ */
+class CountingNetHandler extends FakePlayerNetHandler {
+    private long sent = 0L;
+
+    CountingNetHandler(MinecraftServer server, ServerPlayer player) {
+        super(server, player);
+    }
+
+    @Override
+    public void send(Packet<?> packet) {
+        sent++;
+    }
+
+    long sent() {
+        return sent;
+    }
+}
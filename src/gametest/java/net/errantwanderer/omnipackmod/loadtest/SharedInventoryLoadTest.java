@@ -0,0 +1,295 @@
+package net.errantwanderer.omnipackmod.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.mojang.authlib.GameProfile;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.errantwanderer.omnipackmod.SharedInventoryGroups;
+import net.errantwanderer.omnipackmod.SharedInventoryManager;
+import net.errantwanderer.omnipackmod.network.NetworkRegistrationServer;
+import net.errantwanderer.omnipackmod.network.SlotActionRequest;
+import net.minecraft.core.Holder;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.gametest.framework.TestData;
+import net.minecraft.gametest.framework.TestEnvironmentDefinition;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.inventory.ClickType;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.common.util.FakePlayerFactory;
+import net.neoforged.neoforge.event.RegisterGameTestsEvent;
+import net.neoforged.neoforge.network.PacketDistributor;
+
+/**
+ * GameTest load harness: N fake players in one shared inventory group, with no network.
+ *
+ * - Clicks go through NetworkRegistrationServer.applyActions, the SlotActionRequest handler
+ *   itself; pickups go through ItemEntity.playerTouch and the real pickup event
+ * - Rounds of ACTION_TICKS scripted ticks and SETTLE_TICKS quiet ones; the script cycles
+ *   through random clicks, pickup floods and every bot clicking the same slot at once
+ * - After each settle window the group's items are counted (shared slots plus every bot's
+ *   carried stack) against what it started with plus what was picked up. Any difference is a
+ *   conservation violation, a dupe or a loss, and fails the test. SAME_SLOT makes every bot
+ *   pick up the same stack in one tick, so it only passes if every losing write is undone
+ *   (rejected writes are reported next to the violations)
+ * - Logs server tick time percentiles (MSPT), time spent in the click handler and packets sent
+ *   per tick, so the player count where the mod starts costing a whole tick can be read off
+ *
+ * Bot counts come from -Domnipack.loadtest.players (comma separated, default 10,50,100); each
+ * count is its own test and group. GameTest runs tests side by side, so pass a single count
+ * for clean tick times. Run with the gameTestServer run config; lives in the gametest source
+ * set, so none of this ships in the mod jar. Bots leave their group and lose their saved
+ * membership when the test ends.
+ */
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
+public final class SharedInventoryLoadTest {
+    private static final int ROUNDS = 12;
+    private static final int ACTION_TICKS = 10;
+    private static final int SETTLE_TICKS = 10;
+    private static final int ROUND_TICKS = ACTION_TICKS + SETTLE_TICKS;
+    private static final int MAX_TICKS = ROUNDS * ROUND_TICKS + 100;
+    private static final int SEED_STACKS = 20;
+    // inventory menu slots the bots click: main, hotbar and offhand, never the crafting grid
+    private static final int FIRST_CLICK_SLOT = 9;
+    private static final int LAST_CLICK_SLOT = 45;
+    private static final int HOTBAR_FIRST_MENU_SLOT = 36;
+    private static final Item[] ITEMS = { Items.COBBLESTONE, Items.OAK_PLANKS, Items.IRON_INGOT, Items.TORCH };
+
+    private enum Pattern { RANDOM_CLICKS, PICKUP_FLOOD, SAME_SLOT }
+
+    private final GameTestHelper helper;
+    private final int botCount;
+    private final String group;
+    private final RandomSource random;
+    private final List<ServerPlayer> bots = new ArrayList<>();
+    private final List<CountingNetHandler> connections = new ArrayList<>();
+    private SharedInventoryManager manager;
+    private long[] expected;
+
+    private int tick = 0;
+    private int sequence = 0;
+    private long packetsBefore = 0L;
+    private long violations = 0L;
+    private boolean finished = false;
+    private final LongArrayList serverTickNanos = new LongArrayList();
+    private final LongArrayList handlerNanos = new LongArrayList();
+    private final LongArrayList packetsPerTick = new LongArrayList();
+
+    @SubscribeEvent
+    public static void onRegisterGameTests(RegisterGameTestsEvent event) {
+        Holder<TestEnvironmentDefinition> environment = event.registerEnvironment(id("loadtest"));
+        for (int bots : botCounts()) {
+            event.registerTest(id("shared_inventory_load_" + bots),
+                    helper -> new SharedInventoryLoadTest(helper, bots).start(),
+                    new TestData<>(environment, id("empty"), MAX_TICKS, 0, true));
+        }
+    }
+
+    private static ResourceLocation id(String path) {
+        return ResourceLocation.fromNamespaceAndPath(OmniPackMod.MOD_ID, path);
+    }
+
+    private static int[] botCounts() {
+        String property = System.getProperty("omnipack.loadtest.players", "10,50,100");
+        try {
+            return Arrays.stream(property.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                    .mapToInt(Integer::parseInt).filter(n -> n > 0).toArray();
+        } catch (NumberFormatException e) {
+            OmniPackMod.LOGGER.warn("OmniPackMod: invalid omnipack.loadtest.players '{}', using 10,50,100", property);
+            return new int[] { 10, 50, 100 };
+        }
+    }
+
+    private SharedInventoryLoadTest(GameTestHelper helper, int botCount) {
+        this.helper = helper;
+        this.botCount = botCount;
+        this.group = "loadtest_" + botCount;
+        this.random = RandomSource.create(botCount);
+    }
+
+    private void start() {
+        ServerLevel level = helper.getLevel();
+        MinecraftServer server = level.getServer();
+        SharedInventoryGroups groups = OmniPackMod.getSharedInventoryGroups();
+
+        for (int i = 0; i < botCount; i++) {
+            ServerPlayer bot = FakePlayerFactory.get(level, new GameProfile(new UUID(botCount, i), "omnipack_bot_" + i));
+            CountingNetHandler connection = new CountingNetHandler(server, bot);
+            bot.connection = connection;
+            groups.moveToGroup(bot, group);
+            bots.add(bot);
+            connections.add(connection);
+        }
+        manager = groups.get(group);
+
+        for (int i = 0; i < SEED_STACKS; i++) {
+            manager.insertShared(new ItemStack(ITEMS[i % ITEMS.length], 64), bots.get(0).getUUID());
+        }
+        expected = countItems();
+        packetsBefore = packetsSent();
+
+        helper.onEachTick(this::onTick);
+    }
+
+    private void onTick() {
+        if (finished) return;
+        int t = tick++;
+        sampleTick(t);
+
+        if (t >= ROUNDS * ROUND_TICKS) {
+            finish();
+            return;
+        }
+
+        int round = t / ROUND_TICKS;
+        int inRound = t % ROUND_TICKS;
+        if (inRound < ACTION_TICKS) {
+            long started = System.nanoTime();
+            switch (Pattern.values()[round % Pattern.values().length]) {
+                case RANDOM_CLICKS -> randomClicks();
+                case PICKUP_FLOOD -> pickupFlood();
+                case SAME_SLOT -> sameSlot(HOTBAR_FIRST_MENU_SLOT + round % 9);
+            }
+            handlerNanos.add(System.nanoTime() - started);
+        } else if (inRound == ROUND_TICKS - 1) {
+            checkConservation(round);
+        }
+    }
+
+    private void randomClicks() {
+        for (ServerPlayer bot : bots) {
+            int slot = FIRST_CLICK_SLOT + random.nextInt(LAST_CLICK_SLOT - FIRST_CLICK_SLOT + 1);
+            click(bot, slot, random.nextInt(2));
+        }
+    }
+
+    private void sameSlot(int slot) {
+        for (ServerPlayer bot : bots) {
+            click(bot, slot, 0);
+        }
+    }
+
+    private void click(ServerPlayer bot, int slot, int button) {
+        SlotActionRequest request = new SlotActionRequest(slot, button, ClickType.PICKUP.ordinal(), ++sequence);
+        NetworkRegistrationServer.applyActions(bot, List.of(request), response -> PacketDistributor.sendToPlayer(bot, response));
+    }
+
+    private void pickupFlood() {
+        ServerLevel level = helper.getLevel();
+        for (ServerPlayer bot : bots) {
+            int kind = random.nextInt(ITEMS.length);
+            int count = 1 + random.nextInt(16);
+            ItemEntity entity = new ItemEntity(level, bot.getX(), bot.getY(), bot.getZ(), new ItemStack(ITEMS[kind], count));
+            entity.setNoPickUpDelay();
+            level.addFreshEntity(entity);
+
+            entity.playerTouch(bot);
+            int left = entity.isRemoved() ? 0 : entity.getItem().getCount();
+            expected[kind] += count - left;
+            if (!entity.isRemoved()) {
+                // whatever did not fit leaves the test, it was never the group's
+                entity.discard();
+            }
+        }
+    }
+
+    /**
+     * Shared slots plus what each bot holds on its cursor, per test item. The bots' own
+     * inventories are mirrors of the shared slots and are not counted.
+     */
+    private long[] countItems() {
+        long[] counts = new long[ITEMS.length];
+        for (int kind = 0; kind < ITEMS.length; kind++) {
+            counts[kind] = manager.countShared(ITEMS[kind]);
+            for (ServerPlayer bot : bots) {
+                ItemStack carried = bot.containerMenu.getCarried();
+                if (carried.is(ITEMS[kind])) counts[kind] += carried.getCount();
+            }
+        }
+        return counts;
+    }
+
+    private void checkConservation(int round) {
+        long[] actual = countItems();
+        for (int kind = 0; kind < ITEMS.length; kind++) {
+            if (actual[kind] != expected[kind]) {
+                violations++;
+                OmniPackMod.LOGGER.warn("OmniPackMod: load test {} bots, round {} ({}): expected {} {}, found {}",
+                        botCount, round, Pattern.values()[round % Pattern.values().length], expected[kind], ITEMS[kind], actual[kind]);
+            }
+        }
+        // count each violation once, not again in every later round
+        expected = actual;
+    }
+
+    private void sampleTick(int t) {
+        long packets = packetsSent();
+        if (t > 0) {
+            MinecraftServer server = helper.getLevel().getServer();
+            long[] tickTimes = server.getTickTimesNanos();
+            serverTickNanos.add(tickTimes[Math.floorMod(server.getTickCount() - 1, tickTimes.length)]);
+            packetsPerTick.add(packets - packetsBefore);
+        }
+        packetsBefore = packets;
+    }
+
+    private long packetsSent() {
+        long total = 0L;
+        for (CountingNetHandler connection : connections) {
+            total += connection.sent();
+        }
+        return total;
+    }
+
+    private void finish() {
+        finished = true;
+        SharedInventoryGroups groups = OmniPackMod.getSharedInventoryGroups();
+        for (ServerPlayer bot : bots) {
+            groups.onPlayerLeave(bot);
+            // moveToGroup saved the bot's membership; don't leave fake members in the world
+            groups.clearMembership(bot.getUUID());
+        }
+
+        long[] ticks = serverTickNanos.toLongArray();
+        long[] handler = handlerNanos.toLongArray();
+        long[] packets = packetsPerTick.toLongArray();
+        Arrays.sort(ticks);
+        Arrays.sort(handler);
+        Arrays.sort(packets);
+
+        String report = String.format(
+                "%d bots: server tick p50 %.2fms, p95 %.2fms, p99 %.2fms, max %.2fms; click handler p50 %dus, p99 %dus per tick;"
+                        + " packets per tick avg %.1f, max %d; %d conservation violation(s), %d conflicting write(s), %d rejected",
+                botCount, percentile(ticks, 0.50) / 1e6, percentile(ticks, 0.95) / 1e6, percentile(ticks, 0.99) / 1e6,
+                percentile(ticks, 1.0) / 1e6, percentile(handler, 0.50) / 1_000L, percentile(handler, 0.99) / 1_000L,
+                Arrays.stream(packets).average().orElse(0.0), percentile(packets, 1.0), violations, manager.getConflictingWrites(),
+                manager.getMetrics().rejectedWrites());
+        OmniPackMod.LOGGER.info("OmniPackMod: load test {}", report);
+
+        if (violations > 0) {
+            helper.fail(Component.literal("Shared inventory lost or duplicated items: " + report));
+        } else {
+            helper.succeed();
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0L;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
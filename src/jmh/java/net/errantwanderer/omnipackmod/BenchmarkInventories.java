@@ -0,0 +1,99 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.List;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.CustomData;
+import net.minecraft.world.item.component.ItemLore;
+
+/**
+ * Synthetic contents for the benchmarks' 41 shared slots, plus the game bootstrap every
+ * ItemStack needs.
+ *
+ * - EMPTY: nothing anywhere
+ * - SIMPLE: plain stackable blocks and items, varying counts
+ * - COMPONENTS: unstackable swords carrying a name, lore, damage, repair cost and custom data,
+ *   the worst case for hashing, matching, copying and encoding
+ *
+ * Runs outside FML, so mixins are not applied: PatchedDataComponentMapMixin's hash cache is
+ * absent and component-heavy fingerprints are measured uncached.
+ */
+final class BenchmarkInventories {
+    enum Kind { EMPTY, SIMPLE, COMPONENTS }
+
+    private static boolean bootstrapped = false;
+
+    private BenchmarkInventories() { }
+
+    static synchronized void bootstrap() {
+        if (bootstrapped) return;
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        bootstrapped = true;
+    }
+
+    /**
+     * Static registries only; enough for every component used here.
+     */
+    static RegistryAccess registries() {
+        return RegistryAccess.fromRegistryOfRegistries(BuiltInRegistries.REGISTRY);
+    }
+
+    static ItemStack stackFor(Kind kind, int slot) {
+        return switch (kind) {
+            case EMPTY -> ItemStack.EMPTY;
+            case SIMPLE -> simple(slot);
+            case COMPONENTS -> componentHeavy(slot);
+        };
+    }
+
+    /**
+     * A different stack for the same slot, as a player edit would produce.
+     */
+    static ItemStack variantOf(ItemStack stack) {
+        if (stack.isEmpty()) return new ItemStack(Items.DIRT);
+        if (stack.isStackable()) {
+            return stack.copyWithCount(stack.getCount() < stack.getMaxStackSize() ? stack.getCount() + 1 : 1);
+        }
+        ItemStack variant = stack.copy();
+        variant.set(DataComponents.DAMAGE, stack.getOrDefault(DataComponents.DAMAGE, 0) + 1);
+        return variant;
+    }
+
+    private static ItemStack simple(int slot) {
+        ItemStack stack = switch (slot % 4) {
+            case 0 -> new ItemStack(Items.COBBLESTONE);
+            case 1 -> new ItemStack(Items.OAK_PLANKS);
+            case 2 -> new ItemStack(Items.IRON_INGOT);
+            default -> new ItemStack(Items.TORCH);
+        };
+        stack.setCount(1 + slot % stack.getMaxStackSize());
+        return stack;
+    }
+
+    private static ItemStack componentHeavy(int slot) {
+        ItemStack stack = new ItemStack(Items.DIAMOND_SWORD);
+        stack.set(DataComponents.CUSTOM_NAME, Component.literal("Shared blade #" + slot));
+        stack.set(DataComponents.LORE, new ItemLore(List.of(
+                Component.literal("Forged for slot " + slot),
+                Component.literal("Belongs to everyone"),
+                Component.literal("Handle with care"))));
+        stack.set(DataComponents.DAMAGE, slot * 3);
+        stack.set(DataComponents.REPAIR_COST, slot);
+
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("slot", slot);
+        tag.putString("owner", "benchmark");
+        tag.putLong("created", 1_000_000L + slot);
+        stack.set(DataComponents.CUSTOM_DATA, CustomData.of(tag));
+        return stack;
+    }
+}
@@ -0,0 +1,152 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.errantwanderer.omnipackmod.network.SharedInventorySyncPayload;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.network.connection.ConnectionType;
+
+/**
+ * Hot paths of SharedInventoryManager, one group with {@code players} members whose
+ * inventories are plain SimpleContainers (no server, no ServerPlayer).
+ *
+ * - detectIdle: full-scan detection with nothing changed, the cost of every full-scan tick
+ * - detectAndApply: every member edits one slot, then one apply pass
+ * - publishSnapshot: one commit, then every member takes the shared snapshot (the broadcast's
+ *   copy-on-write path); deepCopyPerPlayer is the per-player 41-stack copy it replaced
+ * - encodeBroadcast: a 41-slot delta encoded once and copied into every member's frame
+ *
+ * Run with ./gradlew jmh; the gc profiler reports allocation per op next to ns/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SharedInventoryManagerBenchmark {
+    private static final int SLOTS = SharedInventoryManager.SHARED_SLOT_COUNT;
+    private static final int MAIN_SLOTS = 36;
+
+    @Param({"EMPTY", "SIMPLE", "COMPONENTS"})
+    public BenchmarkInventories.Kind kind;
+
+    @Param({"1", "10", "50", "200"})
+    public int players;
+
+    private RegistryAccess registries;
+    private SharedInventoryManager manager;
+    private UUID[] ids;
+    private SimpleContainer[] inventories;
+    private final ItemStack[] original = new ItemStack[SLOTS];
+    private final ItemStack[] variant = new ItemStack[SLOTS];
+    private boolean flipped = false;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkInventories.bootstrap();
+        registries = BenchmarkInventories.registries();
+        manager = new SharedInventoryManager("benchmark");
+
+        for (int slot = 0; slot < SLOTS; slot++) {
+            original[slot] = BenchmarkInventories.stackFor(kind, slot);
+            variant[slot] = BenchmarkInventories.variantOf(original[slot]);
+        }
+
+        ids = new UUID[players];
+        inventories = new SimpleContainer[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(0L, i);
+            inventories[i] = new SimpleContainer(SLOTS);
+        }
+
+        // seed the shared slots through the normal write path: member 0 starts empty and fills up
+        manager.detectAndEnqueueDiff(ids[0], inventories[0], DirtySlotTracker.ALL_SLOTS);
+        fill(inventories[0]);
+        manager.detectAndEnqueueDiff(ids[0], inventories[0], DirtySlotTracker.ALL_SLOTS);
+        manager.processQueuedRequests();
+
+        // everyone else joins already matching the shared state
+        for (int i = 1; i < players; i++) {
+            fill(inventories[i]);
+            manager.detectAndEnqueueDiff(ids[i], inventories[i], DirtySlotTracker.ALL_SLOTS);
+        }
+    }
+
+    private void fill(SimpleContainer inventory) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            inventory.setItem(slot, original[slot]);
+        }
+    }
+
+    @Benchmark
+    public void detectIdle() {
+        for (int i = 0; i < players; i++) {
+            manager.detectAndEnqueueDiff(ids[i], inventories[i], DirtySlotTracker.ALL_SLOTS);
+        }
+    }
+
+    @Benchmark
+    public void detectAndApply() {
+        flipped = !flipped;
+        ItemStack[] target = flipped ? variant : original;
+        for (int i = 0; i < players; i++) {
+            // past 36 members several share a slot, which exercises the concurrent-write merge
+            int slot = i % MAIN_SLOTS;
+            inventories[i].setItem(slot, target[slot]);
+            manager.detectAndEnqueueDiff(ids[i], inventories[i], 1L << slot);
+        }
+        manager.processQueuedRequests();
+    }
+
+    @Benchmark
+    public void publishSnapshot(Blackhole blackhole) {
+        flipped = !flipped;
+        inventories[0].setItem(0, (flipped ? variant : original)[0]);
+        manager.detectAndEnqueueDiff(ids[0], inventories[0], 1L);
+        manager.processQueuedRequests();
+
+        for (int i = 0; i < players; i++) {
+            blackhole.consume(manager.currentSnapshot());
+        }
+    }
+
+    @Benchmark
+    public void deepCopyPerPlayer(Blackhole blackhole) {
+        for (int i = 0; i < players; i++) {
+            ItemStack[] copy = new ItemStack[SLOTS];
+            for (int slot = 0; slot < SLOTS; slot++) {
+                copy[slot] = original[slot].copy();
+            }
+            blackhole.consume(copy);
+        }
+    }
+
+    @Benchmark
+    public void encodeBroadcast(Blackhole blackhole) {
+        SharedInventorySyncPayload payload = SharedInventorySyncPayload.encodeOnce(Optional.of(1L),
+                manager.collectSharedSlotUpdates(DirtySlotTracker.ALL_SLOTS), registries);
+        for (int i = 0; i < players; i++) {
+            ByteBuf frame = Unpooled.buffer();
+            SharedInventorySyncPayload.STREAM_CODEC.encode(
+                    new RegistryFriendlyByteBuf(frame, registries, ConnectionType.NEOFORGE), payload);
+            blackhole.consume(frame.writerIndex());
+            frame.release();
+        }
+    }
+}
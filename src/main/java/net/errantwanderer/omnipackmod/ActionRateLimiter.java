@@ -0,0 +1,69 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-player token bucket for inventory click actions.
+ *
+ * - Each player may send actionBurst actions at once and actionRateLimit per second after that
+ * - An action over the limit is refused, not queued: the client's prediction is rolled back by
+ *   the rejecting SlotActionResponse, so a macro cannot build up server-side work
+ * - Buckets are refilled lazily on use, nothing runs per tick
+ *
+ * Server thread only.
+ */
+public final class ActionRateLimiter {
+    private final Map<UUID, Bucket> buckets = new HashMap<>();
+    private long refused = 0L;
+
+    /**
+     * Takes one token for {@code player}; false if the action must be refused.
+     */
+    public boolean tryAcquire(UUID player) {
+        return tryAcquire(player, System.nanoTime(), Config.ACTION_RATE_LIMIT.get(), Config.ACTION_BURST.get());
+    }
+
+    /**
+     * tryAcquire with the clock and limits passed in; package-private so the game tests need
+     * neither real time nor the config. A rate of 0 or less disables the limit.
+     */
+    boolean tryAcquire(UUID player, long now, int rate, int burst) {
+        if (rate <= 0) return true;
+
+        Bucket bucket = buckets.computeIfAbsent(player, id -> new Bucket(burst, now));
+        double refill = (now - bucket.lastRefillNanos) * rate / 1_000_000_000.0;
+        bucket.tokens = Math.min(burst, bucket.tokens + refill);
+        bucket.lastRefillNanos = now;
+
+        if (bucket.tokens < 1.0) {
+            refused++;
+            return false;
+        }
+        bucket.tokens -= 1.0;
+        return true;
+    }
+
+    public void forget(UUID player) {
+        buckets.remove(player);
+    }
+
+    public void clear() {
+        buckets.clear();
+    }
+
+    public long getRefusedActions() {
+        return refused;
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefillNanos;
+
+        Bucket(double tokens, long lastRefillNanos) {
+            this.tokens = tokens;
+            this.lastRefillNanos = lastRefillNanos;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.errantwanderer.omnipackmod.network.CompoundActionRequest;
+import net.errantwanderer.omnipackmod.network.SharedInventorySyncPayload;
+import net.errantwanderer.omnipackmod.network.SlotActionResponse;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ClickType;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Client-side optimistic prediction for shared slot clicks and multi-click gestures.
+ *
+ * - predict() runs the click on the local menu right away and remembers, per sequence number,
+ *   what each touched slot held before and after
+ * - reconcile() compares that prediction with the server's SlotActionResponse and restores only
+ *   the slots (and carried stack) that were mispredicted
+ * - A slot that changed again since the prediction (e.g. a shared inventory sync arrived) is left
+ *   alone: whatever overwrote it is newer than our guess
+ *
+ * Main client thread only.
+ */
+public final class ClickPredictor {
+    private static final int MAX_PENDING = 64;
+
+    private static final LinkedHashMap<Integer, Prediction> PENDING = new LinkedHashMap<>();
+    private static int nextSequence = 0;
+
+    private ClickPredictor() { }
+
+    /**
+     * Applies the click locally and returns the sequence number to send with the request.
+     */
+    public static int predict(Player player, AbstractContainerMenu menu, int slotIndex, int button, ClickType clickType) {
+        return predictGesture(player, menu, List.of(new CompoundActionRequest.Step(slotIndex, button, clickType.ordinal())));
+    }
+
+    /**
+     * Applies every step of a gesture locally, as one prediction under one sequence number.
+     */
+    public static int predictGesture(Player player, AbstractContainerMenu menu, List<CompoundActionRequest.Step> steps) {
+        int sequence = ++nextSequence;
+
+        int size = menu.slots.size();
+        ItemStack[] before = new ItemStack[size];
+        for (int i = 0; i < size; i++) {
+            before[i] = menu.getSlot(i).getItem().copy();
+        }
+
+        ClickType[] clickTypes = ClickType.values();
+        for (CompoundActionRequest.Step step : steps) {
+            menu.clicked(step.slotIndex(), step.button(), clickTypes[step.clickTypeOrdinal()], player);
+        }
+
+        Prediction prediction = new Prediction(menu.containerId, menu.getCarried().copy());
+        for (int i = 0; i < size; i++) {
+            ItemStack after = menu.getSlot(i).getItem();
+            if (!ItemStack.matches(before[i], after)) {
+                prediction.slots.put(i, new SlotPrediction(before[i], after.copy()));
+            }
+        }
+
+        PENDING.put(sequence, prediction);
+        if (PENDING.size() > MAX_PENDING) {
+            // responses that never came back; nothing to reconcile them against any more
+            Iterator<Integer> it = PENDING.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the number of slots that had to be rolled back.
+     */
+    public static int reconcile(SlotActionResponse response, Player player) {
+        Prediction prediction = PENDING.remove(response.sequence());
+        if (prediction == null || player == null) return 0;
+
+        AbstractContainerMenu menu = player.containerMenu;
+        if (menu.containerId != prediction.containerId) return 0; // screen closed meanwhile
+
+        Map<Integer, ItemStack> authoritative = new HashMap<>();
+        for (SharedInventorySyncPayload.SlotUpdate update : response.slots()) {
+            authoritative.put(update.slotIndex(), update.stack());
+        }
+
+        int rolledBack = 0;
+
+        // slots we predicted: expected is the server's value, or unchanged if the server did not touch it
+        for (Map.Entry<Integer, SlotPrediction> entry : prediction.slots.entrySet()) {
+            int slot = entry.getKey();
+            SlotPrediction predicted = entry.getValue();
+            ItemStack expected = authoritative.getOrDefault(slot, predicted.before);
+            if (restoreIfMispredicted(menu, slot, predicted.after, expected)) rolledBack++;
+        }
+
+        // slots the server changed that we did not predict at all
+        for (Map.Entry<Integer, ItemStack> entry : authoritative.entrySet()) {
+            int slot = entry.getKey();
+            if (prediction.slots.containsKey(slot) || slot < 0 || slot >= menu.slots.size()) continue;
+            if (!ItemStack.matches(menu.getSlot(slot).getItem(), entry.getValue())) {
+                menu.getSlot(slot).set(entry.getValue().copy());
+                rolledBack++;
+            }
+        }
+
+        ItemStack carried = menu.getCarried();
+        if (ItemStack.matches(carried, prediction.carriedAfter) && !ItemStack.matches(carried, response.carried())) {
+            menu.setCarried(response.carried().copy());
+            rolledBack++;
+        }
+
+        return rolledBack;
+    }
+
+    private static boolean restoreIfMispredicted(AbstractContainerMenu menu, int slot, ItemStack predicted, ItemStack expected) {
+        if (slot < 0 || slot >= menu.slots.size()) return false;
+        ItemStack current = menu.getSlot(slot).getItem();
+        if (!ItemStack.matches(current, predicted)) return false; // overwritten since, leave it
+        if (ItemStack.matches(predicted, expected)) return false;  // prediction was right
+
+        menu.getSlot(slot).set(expected.copy());
+        return true;
+    }
+
+    private record SlotPrediction(ItemStack before, ItemStack after) { }
+
+    private static class Prediction {
+        final int containerId;
+        final ItemStack carriedAfter;
+        final Map<Integer, SlotPrediction> slots = new HashMap<>();
+
+        Prediction(int containerId, ItemStack carriedAfter) {
+            this.containerId = containerId;
+            this.carriedAfter = carriedAfter;
+        }
+    }
+}
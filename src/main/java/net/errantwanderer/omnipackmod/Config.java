@@ -2,6 +2,8 @@ package net.errantwanderer.omnipackmod;
 
 import java.util.List;
 
+import net.errantwanderer.omnipackmod.metrics.MetricsDump;
+import net.errantwanderer.omnipackmod.replication.ReplicationRole;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
 import net.neoforged.neoforge.common.ModConfigSpec;
@@ -28,6 +30,94 @@ public class Config {
             .comment("A list of items to log on common setup.")
             .defineListAllowEmpty("items", List.of("minecraft:iron_ingot"), () -> "", Config::validateItemName);
 
+    public static final ModConfigSpec.BooleanValue DIRTY_SLOT_TRACKING = BUILDER
+            .comment("Only compare inventory slots that were touched since the last tick instead of all 41 slots of every player")
+            .define("dirtySlotTracking", true);
+
+    public static final ModConfigSpec.IntValue FULL_SCAN_INTERVAL_TICKS = BUILDER
+            .comment("With dirty slot tracking on, compare every slot every N ticks to catch stacks edited in place (0 = never)")
+            .defineInRange("fullScanIntervalTicks", 20, 0, Integer.MAX_VALUE);
+
+    public static final ModConfigSpec.IntValue PERSIST_INTERVAL_TICKS = BUILDER
+            .comment("Minimum ticks between background saves of the shared inventory (only written when it changed)")
+            .defineInRange("persistIntervalTicks", 100, 1, Integer.MAX_VALUE);
+
+    public static final ModConfigSpec.BooleanValue JOURNAL_ENABLED = BUILDER
+            .comment("Record every shared inventory write in an append-only journal (crash replay and /omnipack rollback)")
+            .define("journalEnabled", true);
+
+    public static final ModConfigSpec.IntValue JOURNAL_SYNC_INTERVAL_TICKS = BUILDER
+            .comment("How often (in ticks) buffered journal entries are written and fsynced")
+            .defineInRange("journalSyncIntervalTicks", 20, 1, Integer.MAX_VALUE);
+
+    public static final ModConfigSpec.IntValue JOURNAL_MAX_SIZE_MB = BUILDER
+            .comment("Start a new journal file (keeping one old generation) once the current one exceeds this size")
+            .defineInRange("journalMaxSizeMb", 64, 1, 4096);
+
+    public static final ModConfigSpec.IntValue TICK_BUDGET_MICROS = BUILDER
+            .comment("Microseconds per server tick the shared inventory may spend across all groups; leftover work continues next tick (0 = unlimited)")
+            .defineInRange("tickBudgetMicros", 2000, 0, 50_000);
+
+    public static final ModConfigSpec.BooleanValue INTEREST_SYNC = BUILDER
+            .comment("Send non-hotbar shared slot changes immediately only to players looking at an inventory; others get them coalesced")
+            .define("interestSync", true);
+
+    public static final ModConfigSpec.IntValue DEFERRED_SYNC_INTERVAL_TICKS = BUILDER
+            .comment("How often players not looking at an inventory receive their deferred slot changes (0 = only when they open one or switch hotbar slot)")
+            .defineInRange("deferredSyncIntervalTicks", 20, 0, Integer.MAX_VALUE);
+
+    public static final ModConfigSpec.BooleanValue PICKUP_ROUTING = BUILDER
+            .comment("Insert picked up items directly into the shared inventory instead of detecting them as a player edit")
+            .define("pickupRouting", true);
+
+    public static final ModConfigSpec.IntValue STORAGE_PAGES = BUILDER
+            .comment("Pages of 54 slots in each group's paged shared storage (/omnipack storage); 0 disables it")
+            .defineInRange("storagePages", 64, 0, 4096);
+
+    public static final ModConfigSpec.IntValue STORAGE_PAGE_IDLE_TICKS = BUILDER
+            .comment("Unload a storage page back to its compact form after nobody has viewed it for this many ticks")
+            .defineInRange("storagePageIdleTicks", 1200, 1, Integer.MAX_VALUE);
+
+    public static final ModConfigSpec.IntValue ACTION_RATE_LIMIT = BUILDER
+            .comment("Inventory click actions per second a player may send before further ones are refused (0 = unlimited)")
+            .defineInRange("actionRateLimit", 20, 0, 1000);
+
+    public static final ModConfigSpec.IntValue ACTION_BURST = BUILDER
+            .comment("Click actions a player may send at once above actionRateLimit, e.g. a quick series of clicks")
+            .defineInRange("actionBurst", 40, 1, 1000);
+
+    public static final ModConfigSpec.IntValue METRICS_DUMP_INTERVAL_SECONDS = BUILDER
+            .comment("Append every group's /omnipack stats counters to omnipack-metrics.csv/.jsonl in the server directory every N seconds (0 = off)")
+            .defineInRange("metricsDumpIntervalSeconds", 0, 0, 86_400);
+
+    public static final ModConfigSpec.EnumValue<MetricsDump.Format> METRICS_DUMP_FORMAT = BUILDER
+            .comment("File format of the periodic metrics dump: CSV (omnipack-metrics.csv) or JSON lines (omnipack-metrics.jsonl)")
+            .defineEnum("metricsDumpFormat", MetricsDump.Format.CSV);
+
+    public static final ModConfigSpec.BooleanValue TRACE_ENABLED = BUILDER
+            .comment("Record click handling events in an in-memory ring buffer (dumped with /omnipack trace dump); /omnipack trace toggles it until restart")
+            .define("traceEnabled", true);
+
+    public static final ModConfigSpec.IntValue TRACE_SAMPLE_EVERY = BUILDER
+            .comment("Record only one in N click handling events (1 = every event)")
+            .defineInRange("traceSampleEvery", 1, 1, 1_000_000);
+
+    public static final ModConfigSpec.EnumValue<ReplicationRole> REPLICATION_ROLE = BUILDER
+            .comment("Cross-server replication: OFF, PRIMARY (owns every group's shared inventory, replicas connect to it) or REPLICA")
+            .defineEnum("replicationRole", ReplicationRole.OFF);
+
+    public static final ModConfigSpec.ConfigValue<String> REPLICATION_LISTEN = BUILDER
+            .comment("host:port the primary accepts replica connections on; peers must prove the secret, but traffic is not encrypted, so keep it on a private network")
+            .define("replicationListen", "127.0.0.1:25700");
+
+    public static final ModConfigSpec.ConfigValue<String> REPLICATION_PRIMARY = BUILDER
+            .comment("host:port of the primary a replica connects to")
+            .define("replicationPrimary", "127.0.0.1:25700");
+
+    public static final ModConfigSpec.ConfigValue<String> REPLICATION_SECRET = BUILDER
+            .comment("Shared secret every server of the network must use; it is never sent, only proven. Replication stays off while it is empty")
+            .define("replicationSecret", "");
+
 //    public static final ModConfigSpec.BooleanValue CANCEL_PLAYER_DROPS = BUILDER
 //            .comment("Cancel player death drops to prevent dupes (recommended true)")
 //            .define("cancelPlayerDrops", true);
@@ -0,0 +1,21 @@
+package net.errantwanderer.omnipackmod;
+
+/**
+ * Duck interface mixed into vanilla {@link net.minecraft.world.entity.player.Inventory}.
+ *
+ * - Each bit of the mask is one shared slot (0..40), so 41 slots fit in a single long
+ * - Set by the inventory mutators (setItem, removeItem, add, setChanged, ...)
+ * - Consumed by SharedInventoryManager once per tick, so an untouched inventory costs nothing
+ */
+public interface DirtySlotTracker {
+    long ALL_SLOTS = (1L << SharedInventoryManager.SHARED_SLOT_COUNT) - 1L;
+
+    void omnipack$markSlotDirty(int slot);
+
+    void omnipack$markAllDirty();
+
+    /**
+     * Returns the slots touched since the last call and clears the mask.
+     */
+    long omnipack$consumeDirtyMask();
+}
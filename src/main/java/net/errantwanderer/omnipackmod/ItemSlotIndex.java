@@ -0,0 +1,145 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenCustomHashMap;
+
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.ItemStackLinkedSet;
+
+/**
+ * Index over a fixed range of slots: item + components -> slots holding it, slots with room
+ * left, and the total count; plus the set of empty slots.
+ *
+ * - Keys hash and compare like ItemStack.isSameItemSameComponents (ItemStackLinkedSet.TYPE_AND_TAG)
+ * - set() is the only mutator and must be called with a slot's new contents after every write;
+ *   the index keeps its own record of what it last saw per slot, so callers need not pass the old stack
+ * - Finding a merge target or an empty slot is a nextSetBit() away instead of a scan
+ *
+ * Not thread-safe; owned by whoever owns the slots.
+ */
+public final class ItemSlotIndex {
+    private final int size;
+    private final Map<ItemStack, Entry> byItem = new Object2ObjectOpenCustomHashMap<>(ItemStackLinkedSet.TYPE_AND_TAG);
+    private final BitSet empty;
+    // per slot: the canonical key it is indexed under (null when empty) and its count
+    private final ItemStack[] keys;
+    private final int[] counts;
+
+    public ItemSlotIndex(int size) {
+        this.size = size;
+        this.empty = new BitSet(size);
+        this.empty.set(0, size);
+        this.keys = new ItemStack[size];
+        this.counts = new int[size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void set(int slot, ItemStack stack) {
+        ItemStack oldKey = keys[slot];
+        if (stack.isEmpty()) {
+            if (oldKey == null) return;
+            unlink(slot, oldKey);
+            return;
+        }
+
+        if (oldKey != null && ItemStack.isSameItemSameComponents(oldKey, stack)) {
+            Entry entry = byItem.get(oldKey);
+            entry.total += stack.getCount() - counts[slot];
+            counts[slot] = stack.getCount();
+            entry.partial.set(slot, stack.getCount() < stack.getMaxStackSize());
+            return;
+        }
+
+        if (oldKey != null) unlink(slot, oldKey);
+
+        Entry entry = byItem.get(stack);
+        if (entry == null) {
+            ItemStack key = stack.copyWithCount(1);
+            entry = new Entry(key);
+            byItem.put(key, entry);
+        }
+        entry.slots.set(slot);
+        entry.partial.set(slot, stack.getCount() < stack.getMaxStackSize());
+        entry.total += stack.getCount();
+        keys[slot] = entry.key;
+        counts[slot] = stack.getCount();
+        empty.clear(slot);
+    }
+
+    public void clear() {
+        byItem.clear();
+        empty.set(0, size);
+        Arrays.fill(keys, null);
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * First slot at or after {@code from} holding the same item and components with room left, or -1.
+     */
+    public int nextPartialSlot(ItemStack stack, int from) {
+        Entry entry = byItem.get(stack);
+        return entry != null ? entry.partial.nextSetBit(from) : -1;
+    }
+
+    /**
+     * First empty slot at or after {@code from}, or -1.
+     */
+    public int nextEmptySlot(int from) {
+        int slot = empty.nextSetBit(from);
+        return slot < size ? slot : -1;
+    }
+
+    /**
+     * Total count of exactly this item and components.
+     */
+    public long count(ItemStack stack) {
+        Entry entry = byItem.get(stack);
+        return entry != null ? entry.total : 0L;
+    }
+
+    /**
+     * Total count of an item across all component variants; cost is the number of distinct stacks indexed.
+     */
+    public long count(Item item) {
+        long total = 0L;
+        for (Entry entry : byItem.values()) {
+            if (entry.key.is(item)) total += entry.total;
+        }
+        return total;
+    }
+
+    public int emptySlotCount() {
+        return empty.cardinality();
+    }
+
+    private void unlink(int slot, ItemStack oldKey) {
+        Entry entry = byItem.get(oldKey);
+        entry.slots.clear(slot);
+        entry.partial.clear(slot);
+        entry.total -= counts[slot];
+        if (entry.slots.isEmpty()) {
+            byItem.remove(oldKey);
+        }
+        keys[slot] = null;
+        counts[slot] = 0;
+        empty.set(slot);
+    }
+
+    private static final class Entry {
+        final ItemStack key;
+        final BitSet slots = new BitSet();
+        final BitSet partial = new BitSet();
+        long total;
+
+        Entry(ItemStack key) {
+            this.key = key;
+        }
+    }
+}
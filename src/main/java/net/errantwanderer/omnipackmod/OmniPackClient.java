@@ -1,7 +1,15 @@
 package net.errantwanderer.omnipackmod;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import net.errantwanderer.omnipackmod.network.CompoundActionRequest;
+import net.errantwanderer.omnipackmod.network.InventoryInterestPayload;
 import net.errantwanderer.omnipackmod.network.NetworkRegistrationClient;
 import net.errantwanderer.omnipackmod.network.SlotActionRequest;
+import net.errantwanderer.omnipackmod.storage.SharedStorageMenu;
+import net.errantwanderer.omnipackmod.storage.SharedStorageScreen;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.network.protocol.common.ServerboundCustomPayloadPacket;
@@ -13,15 +21,57 @@ import net.minecraft.client.gui.screens.Screen;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.api.distmarker.Dist;
+import net.neoforged.neoforge.client.event.ClientTickEvent;
+import net.neoforged.neoforge.client.event.RegisterMenuScreensEvent;
 import net.neoforged.neoforge.client.event.ScreenEvent;
 
 /**
- * Client-side interception: do not locally mutate the inventory for shared slots.
- * Instead send a SlotActionRequest to the server and let the server respond/authoritatively update.
+ * Client-side interception: shared slot clicks are predicted locally (ClickPredictor) and sent
+ * to the server as sequenced SlotActionRequests, batched per client tick; the server's response
+ * is authoritative and only mispredicted slots are rolled back.
+ *
+ * - Shift-click, double-click and number-key/offhand swaps are sent with their vanilla click type
+ *   (QUICK_MOVE, PICKUP_ALL, SWAP), so each is one request however many slots it touches
+ * - A drag-split is collected until release and sent as one CompoundActionRequest
  */
 @EventBusSubscriber(modid = OmniPackMod.MOD_ID, value = Dist.CLIENT)
 public class OmniPackClient {
     private static final int SHARED_SLOT_COUNT = SharedInventoryManager.SHARED_SLOT_COUNT;
+    private static final long DOUBLE_CLICK_MILLIS = 250L;
+    // last interest state reported to the server; a new connection starts from "not viewing"
+    private static boolean reportedViewing = false;
+    // the press that may become a drag, until its button is released
+    private static Drag drag = null;
+    private static int lastClickSlot = -1;
+    private static long lastClickMillis = 0L;
+
+    @SubscribeEvent
+    public static void onRegisterMenuScreens(RegisterMenuScreensEvent event) {
+        event.register(OmniPackMenus.SHARED_STORAGE.get(), SharedStorageScreen::new);
+    }
+
+    // Send this tick's clicks as one batch, and tell the server when we start or stop looking at
+    // an inventory, so it knows who needs every delta now
+    @SubscribeEvent
+    public static void onClientTick(ClientTickEvent.Post event) {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc.player == null || mc.getConnection() == null) {
+            reportedViewing = false;
+            NetworkRegistrationClient.clearActions();
+            return;
+        }
+
+        NetworkRegistrationClient.flushActions();
+
+        boolean viewing = mc.screen instanceof AbstractContainerScreen<?>;
+        if (!viewing) {
+            drag = null;
+        }
+        if (viewing != reportedViewing) {
+            reportedViewing = viewing;
+            NetworkRegistrationClient.sendOrQueue(new InventoryInterestPayload(viewing));
+        }
+    }
 
     // Intercept mouse button presses on inventory screens
     @SubscribeEvent
@@ -31,49 +81,160 @@ public class OmniPackClient {
             return;
         }
 
-        double mouseX = event.getMouseX();
-        double mouseY = event.getMouseY();
-        int button = event.getButton();
+        AbstractContainerMenu menu = acs.getMenu();
+        // paged storage slots are plain menu slots synced by vanilla; the player's own slots
+        // there are caught by the server-side diff like any other vanilla container
+        if (menu instanceof SharedStorageMenu) return;
 
-        // compute gui offsets
-        int guiLeft = acs.getGuiLeft();
-        int guiTop = acs.getGuiTop();
+        Slot clickedSlot = slotAt(acs, event.getMouseX(), event.getMouseY());
 
-        AbstractContainerMenu menu = acs.getMenu();
-        Slot clickedSlot = null;
-        for (int i = 0; i < menu.slots.size(); i++) {
-            Slot slot = menu.slots.get(i);
-            int sx = guiLeft + slot.x;
-            int sy = guiTop + slot.y;
-            if (mouseX >= sx && mouseX < sx + 16 && mouseY >= sy && mouseY < sy + 16) {
-                clickedSlot = slot;
-                break;
-            }
-        }
+        // only intercept if the slot is part of the shared inventory (0..40)
+        if (!isShared(clickedSlot)) return;
+
+        // Cancel vanilla handling: we predict the click ourselves and send our own sequenced request
+        event.setCanceled(true);
 
-        if (clickedSlot == null) return;
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null) return;
 
         int slotIndex = clickedSlot.index;
+        int button = event.getButton();
+        long now = Util.getMillis();
+        boolean doubleClick = button == 0 && slotIndex == lastClickSlot && now - lastClickMillis < DOUBLE_CLICK_MILLIS;
+        lastClickSlot = doubleClick ? -1 : slotIndex;
+        lastClickMillis = now;
 
-        // only intercept if the slot is part of the shared inventory (0..40)
-        if (slotIndex < 0 || slotIndex >= SHARED_SLOT_COUNT) return;
+        if (Screen.hasShiftDown()) {
+            click(player, menu, slotIndex, button, ClickType.QUICK_MOVE);
+        } else if (doubleClick) {
+            // collect every matching stack onto the cursor
+            click(player, menu, slotIndex, 0, ClickType.PICKUP_ALL);
+        } else if (!menu.getCarried().isEmpty() && button <= 1) {
+            // may become a drag; decided on release
+            drag = new Drag(menu.containerId, button, slotIndex);
+        } else {
+            click(player, menu, slotIndex, button, ClickType.PICKUP);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onScreenMouseDragged(ScreenEvent.MouseDragged.Pre event) {
+        if (drag == null || !(event.getScreen() instanceof AbstractContainerScreen<?> acs)) return;
+        event.setCanceled(true);
+
+        Slot slot = slotAt(acs, event.getMouseX(), event.getMouseY());
+        if (isShared(slot) && !drag.slots.contains(slot.index)) {
+            // vanilla skips slots that cannot take the carried stack; the server and the
+            // prediction apply the same rules, so just record what was crossed
+            drag.slots.add(slot.index);
+        }
+    }
 
-        // Cancel vanilla local handling so we don't apply client-side optimistic changes
+    @SubscribeEvent
+    public static void onScreenMouseReleased(ScreenEvent.MouseButtonReleased.Pre event) {
+        if (drag == null || event.getButton() != drag.button) return;
+        Drag finished = drag;
+        drag = null;
         event.setCanceled(true);
 
         LocalPlayer player = Minecraft.getInstance().player;
-        if (player == null) return;
+        if (player == null || !(event.getScreen() instanceof AbstractContainerScreen<?> acs)) return;
+        AbstractContainerMenu menu = acs.getMenu();
+        if (menu.containerId != finished.containerId) return;
+
+        if (finished.slots.size() <= 1) {
+            click(player, menu, finished.slots.get(0), finished.button, ClickType.PICKUP);
+            return;
+        }
+
+        // the QUICK_CRAFT sequence vanilla sends click by click, as one gesture
+        List<CompoundActionRequest.Step> steps = new ArrayList<>(finished.slots.size() + 2);
+        int quickCraft = ClickType.QUICK_CRAFT.ordinal();
+        steps.add(new CompoundActionRequest.Step(-999, AbstractContainerMenu.getQuickcraftMask(0, finished.button), quickCraft));
+        for (int slot : finished.slots) {
+            steps.add(new CompoundActionRequest.Step(slot, AbstractContainerMenu.getQuickcraftMask(1, finished.button), quickCraft));
+        }
+        steps.add(new CompoundActionRequest.Step(-999, AbstractContainerMenu.getQuickcraftMask(2, finished.button), quickCraft));
+
+        int sequence = ClickPredictor.predictGesture(player, menu, steps);
+        NetworkRegistrationClient.sendGesture(new CompoundActionRequest(sequence, steps));
+    }
+
+    // Number keys and the offhand key swap the hovered shared slot with a hotbar slot or the offhand
+    @SubscribeEvent
+    public static void onScreenKeyPressed(ScreenEvent.KeyPressed.Pre event) {
+        if (!(event.getScreen() instanceof AbstractContainerScreen<?> acs)) return;
+        AbstractContainerMenu menu = acs.getMenu();
+        if (menu instanceof SharedStorageMenu || !menu.getCarried().isEmpty()) return;
+
+        Slot hovered = acs.getSlotUnderMouse();
+        if (!isShared(hovered)) return;
+
+        Minecraft mc = Minecraft.getInstance();
+        int button = -1;
+        if (mc.options.keySwapOffhand.matches(event.getKeyCode(), event.getScanCode())) {
+            button = 40;
+        } else {
+            for (int i = 0; i < 9; i++) {
+                if (mc.options.keyHotbarSlots[i].matches(event.getKeyCode(), event.getScanCode())) {
+                    button = i;
+                    break;
+                }
+            }
+        }
+        if (button < 0 || mc.player == null) return;
+
+        event.setCanceled(true);
+        click(mc.player, menu, hovered.index, button, ClickType.SWAP);
+    }
 
-        // We send slotIndex + button + a clickType ordinal (use PICKUP as default; server will map properly)
-        int clickTypeOrdinal = ClickType.PICKUP.ordinal();
+    /**
+     * Predicts one click and queues it for this tick's batch.
+     */
+    private static void click(LocalPlayer player, AbstractContainerMenu menu, int slotIndex, int button, ClickType clickType) {
+        // Show the result immediately; the server's response reconciles it
+        int sequence = ClickPredictor.predict(player, menu, slotIndex, button, clickType);
 
-        // Send request to server via NeoForge PacketDistributor
+        // Queue the request; it goes out with the rest of this tick's clicks
         try {
-            SlotActionRequest payload = new SlotActionRequest(slotIndex, button, clickTypeOrdinal);
-            // previously: build pkt & send directly
-            NetworkRegistrationClient.sendOrQueue(payload);
+            NetworkRegistrationClient.queueAction(new SlotActionRequest(slotIndex, button, clickType.ordinal(), sequence));
         } catch (Throwable t) {
             OmniPackMod.LOGGER.warn("Failed to send slot action request (enqueue): {}", t.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static Slot slotAt(AbstractContainerScreen<?> acs, double mouseX, double mouseY) {
+        // compute gui offsets
+        int guiLeft = acs.getGuiLeft();
+        int guiTop = acs.getGuiTop();
+
+        for (Slot slot : acs.getMenu().slots) {
+            int sx = guiLeft + slot.x;
+            int sy = guiTop + slot.y;
+            if (mouseX >= sx && mouseX < sx + 16 && mouseY >= sy && mouseY < sy + 16) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isShared(Slot slot) {
+        return slot != null && slot.index >= 0 && slot.index < SHARED_SLOT_COUNT;
+    }
+
+    /**
+     * A press with a carried stack that may turn into a drag-split across several slots.
+     */
+    private static final class Drag {
+        final int containerId;
+        final int button;
+        // menu slots in the order the cursor crossed them, starting with the pressed one
+        final List<Integer> slots = new ArrayList<>();
+
+        Drag(int containerId, int button, int startSlot) {
+            this.containerId = containerId;
+            this.button = button;
+            slots.add(startSlot);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package net.errantwanderer.omnipackmod;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.LongArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+
+import net.errantwanderer.omnipackmod.metrics.ActionTrace;
+import net.errantwanderer.omnipackmod.metrics.Histogram;
+import net.errantwanderer.omnipackmod.metrics.SharedInventoryMetrics;
+import net.errantwanderer.omnipackmod.storage.PagedSharedStorage;
+import net.errantwanderer.omnipackmod.storage.SharedStorageMenu;
+import net.minecraft.Util;
+import net.minecraft.commands.CommandBuildContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.EntityArgument;
+import net.minecraft.commands.arguments.item.ItemArgument;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.Item;
+
+/**
+ * /omnipack commands. Everything except storage needs permission level 2.
+ *
+ * - storage [page]                   open your group's paged shared storage
+ * - count <item>                     how many of an item your group holds (shared slots + storage)
+ * - rollback <epochMillis> [group]   restore a group's shared inventory to its journaled state at that time
+ * - rollback ago <seconds> [group]   same, relative to now
+ * - group set <players> <group>      move players to a group (created on first use)
+ * - group list                       known groups and their online members
+ * - stats [group]                    a group's shared inventory metrics since start (or last reset)
+ * - stats reset [group]              zero a group's metrics
+ * - trace [on|off|sample <n>]        show or change click event tracing until restart
+ * - trace dump [count]               write the newest traced events to a file in the server directory
+ *
+ * Without an explicit group, rollback and stats target the executing player's group (default from the console).
+ */
+public final class OmniPackCommands {
+    private OmniPackCommands() { }
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher, CommandBuildContext buildContext) {
+        dispatcher.register(Commands.literal("omnipack")
+                .then(Commands.literal("storage")
+                        .executes(ctx -> openStorage(ctx.getSource(), 0))
+                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                .executes(ctx -> openStorage(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "page") - 1))))
+                .then(Commands.literal("count")
+                        .requires(source -> source.hasPermission(2))
+                        .then(Commands.argument("item", ItemArgument.item(buildContext))
+                                .executes(ctx -> count(ctx.getSource(), ItemArgument.getItem(ctx, "item").getItem()))))
+                .then(Commands.literal("rollback")
+                        .requires(source -> source.hasPermission(2))
+                        .then(Commands.literal("ago")
+                                .then(Commands.argument("seconds", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> rollback(ctx.getSource(), secondsAgo(ctx), sourceGroup(ctx.getSource())))
+                                        .then(groupArgument()
+                                                .executes(ctx -> rollback(ctx.getSource(), secondsAgo(ctx),
+                                                        StringArgumentType.getString(ctx, "group"))))))
+                        .then(Commands.argument("timestamp", LongArgumentType.longArg(0))
+                                .executes(ctx -> rollback(ctx.getSource(), LongArgumentType.getLong(ctx, "timestamp"),
+                                        sourceGroup(ctx.getSource())))
+                                .then(groupArgument()
+                                        .executes(ctx -> rollback(ctx.getSource(), LongArgumentType.getLong(ctx, "timestamp"),
+                                                StringArgumentType.getString(ctx, "group"))))))
+                .then(Commands.literal("group")
+                        .requires(source -> source.hasPermission(2))
+                        .then(Commands.literal("set")
+                                .then(Commands.argument("players", EntityArgument.players())
+                                        .then(groupArgument()
+                                                .executes(ctx -> setGroup(ctx.getSource(), EntityArgument.getPlayers(ctx, "players"),
+                                                        StringArgumentType.getString(ctx, "group"))))))
+                        .then(Commands.literal("list")
+                                .executes(ctx -> listGroups(ctx.getSource()))))
+                .then(Commands.literal("stats")
+                        .requires(source -> source.hasPermission(2))
+                        .executes(ctx -> stats(ctx.getSource(), sourceGroup(ctx.getSource())))
+                        .then(Commands.literal("reset")
+                                .executes(ctx -> resetStats(ctx.getSource(), sourceGroup(ctx.getSource())))
+                                .then(groupArgument()
+                                        .executes(ctx -> resetStats(ctx.getSource(), StringArgumentType.getString(ctx, "group")))))
+                        .then(groupArgument()
+                                .executes(ctx -> stats(ctx.getSource(), StringArgumentType.getString(ctx, "group")))))
+                .then(Commands.literal("trace")
+                        .requires(source -> source.hasPermission(2))
+                        .executes(ctx -> traceStatus(ctx.getSource()))
+                        .then(Commands.literal("on")
+                                .executes(ctx -> setTrace(ctx.getSource(), true, ActionTrace.SERVER.getSampleEvery())))
+                        .then(Commands.literal("off")
+                                .executes(ctx -> setTrace(ctx.getSource(), false, ActionTrace.SERVER.getSampleEvery())))
+                        .then(Commands.literal("sample")
+                                .then(Commands.argument("every", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> setTrace(ctx.getSource(), ActionTrace.SERVER.isEnabled(),
+                                                IntegerArgumentType.getInteger(ctx, "every")))))
+                        .then(Commands.literal("dump")
+                                .executes(ctx -> dumpTrace(ctx.getSource(), ActionTrace.CAPACITY))
+                                .then(Commands.argument("count", IntegerArgumentType.integer(1, ActionTrace.CAPACITY))
+                                        .executes(ctx -> dumpTrace(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "count")))))));
+    }
+
+    private static RequiredArgumentBuilder<CommandSourceStack, String> groupArgument() {
+        return Commands.argument("group", StringArgumentType.word())
+                .suggests((ctx, builder) -> SharedSuggestionProvider.suggest(
+                        OmniPackMod.getSharedInventoryGroups().all().stream().map(SharedInventoryManager::getGroupId), builder));
+    }
+
+    private static long secondsAgo(CommandContext<CommandSourceStack> ctx) {
+        return System.currentTimeMillis() - IntegerArgumentType.getInteger(ctx, "seconds") * 1000L;
+    }
+
+    private static String sourceGroup(CommandSourceStack source) {
+        return source.getEntity() instanceof ServerPlayer player
+                ? OmniPackMod.getSharedInventoryGroups().groupOf(player.getUUID())
+                : SharedInventoryGroups.DEFAULT_GROUP;
+    }
+
+    private static int rollback(CommandSourceStack source, long timestamp, String group) {
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryGroups().get(group);
+        if (manager == null) {
+            source.sendFailure(Component.literal("Unknown group " + group));
+            return 0;
+        }
+        UUID actor = source.getEntity() != null ? source.getEntity().getUUID() : Util.NIL_UUID;
+
+        int changed = manager.rollbackTo(timestamp, actor);
+        if (changed < 0) {
+            source.sendFailure(Component.literal("Journal does not cover " + Instant.ofEpochMilli(timestamp)
+                    + " (journal disabled or rotated past it)"));
+            return 0;
+        }
+
+        OmniPackMod.LOGGER.info("OmniPackMod: {} rolled shared inventory of group {} back to {} ({} slots changed)",
+                source.getTextName(), group, Instant.ofEpochMilli(timestamp), changed);
+        source.sendSuccess(() -> Component.literal("Rolled shared inventory of group " + group + " back to "
+                + Instant.ofEpochMilli(timestamp) + " (" + changed + " slots changed)"), true);
+        return changed;
+    }
+
+    private static int openStorage(CommandSourceStack source, int page) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager(player);
+        PagedSharedStorage storage = manager != null ? manager.getStorage() : null;
+        if (storage == null) {
+            source.sendFailure(Component.literal("Shared storage is disabled"));
+            return 0;
+        }
+
+        SharedStorageMenu.open(player, storage, page);
+        return 1;
+    }
+
+    private static int count(CommandSourceStack source, Item item) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager(player);
+        if (manager == null) return 0;
+
+        long shared = manager.countShared(item);
+        long stored = manager.getStorage() != null ? manager.getStorage().count(item) : 0L;
+        long total = shared + stored;
+        source.sendSuccess(() -> Component.literal(total + " x ").append(item.getName())
+                .append(" (" + shared + " carried, " + stored + " in storage)"), false);
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    private static int setGroup(CommandSourceStack source, Collection<ServerPlayer> players, String group) {
+        if (!SharedInventoryGroups.isValidName(group)) {
+            source.sendFailure(Component.literal("Group names are 1-32 characters of a-z, 0-9, _ and -"));
+            return 0;
+        }
+
+        SharedInventoryGroups groups = OmniPackMod.getSharedInventoryGroups();
+        for (ServerPlayer player : players) {
+            groups.moveToGroup(player, group);
+        }
+        OmniPackMod.LOGGER.info("OmniPackMod: {} moved {} player(s) to group {}", source.getTextName(), players.size(), group);
+        source.sendSuccess(() -> Component.literal("Moved " + players.size() + " player(s) to group " + group), true);
+        return players.size();
+    }
+
+    private static int listGroups(CommandSourceStack source) {
+        Collection<SharedInventoryManager> managers = OmniPackMod.getSharedInventoryGroups().all();
+        for (SharedInventoryManager manager : managers) {
+            String names = manager.getMembers().stream()
+                    .map(p -> p.getName().getString())
+                    .reduce((a, b) -> a + ", " + b)
+                    .orElse("-");
+            source.sendSuccess(() -> Component.literal(manager.getGroupId() + " (" + manager.getMembers().size()
+                    + " online): " + names), false);
+        }
+        return managers.size();
+    }
+
+    private static int stats(CommandSourceStack source, String group) {
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryGroups().get(group);
+        if (manager == null) {
+            source.sendFailure(Component.literal("Unknown group " + group));
+            return 0;
+        }
+        SharedInventoryMetrics m = manager.getMetrics();
+        Histogram scan = m.scanNanos();
+        Histogram depth = m.queueDepth();
+
+        line(source, "Group %s (%d online)", group, manager.getMembers().size());
+        line(source, " scan: %d passes, p50 <=%dus, p99 <=%dus, max %dus", scan.count(),
+                scan.percentile(0.50) / 1_000L, scan.percentile(0.99) / 1_000L, scan.max() / 1_000L);
+        line(source, " queue depth at apply: %d passes, p50 <=%d, p99 <=%d, max %d slots", depth.count(),
+                depth.percentile(0.50), depth.percentile(0.99), depth.max());
+        line(source, " writes: %d applied, %d conflicting (%d merged, %d rejected)", m.appliedWrites(),
+                m.conflictingWrites(), m.conflictingWrites() - m.rejectedWrites(), m.rejectedWrites());
+        line(source, " broadcast: %d slots, %.1f KiB encoded", m.slotsBroadcast(), m.bytesBroadcast() / 1024.0);
+        line(source, " persistence: %s; journal flush: %s", latency(m.snapshotWriteNanos()), latency(m.journalFlushNanos()));
+
+        List<SharedInventoryMetrics.RequestRate> rates = m.requestRates();
+        String top = rates.stream().limit(5)
+                .map(rate -> String.format(Locale.ROOT, "%s %.1f/s", playerName(source, rate.player()), rate.perSecond()))
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("-");
+        line(source, " requests: %d total; top rates: %s", m.requests(), top);
+
+        TickBudget budget = OmniPackMod.getSharedInventoryGroups().getTickBudget();
+        line(source, "All groups: %d ticks, %d over budget (worst %dus over), %d deferred; %d click actions refused",
+                budget.getTicks(), budget.getOverrunTicks(), budget.getWorstOverrunNanos() / 1_000L,
+                budget.getDeferredTicks(), OmniPackMod.getSharedInventoryGroups().getActionLimiter().getRefusedActions());
+        return 1;
+    }
+
+    private static int resetStats(CommandSourceStack source, String group) {
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryGroups().get(group);
+        if (manager == null) {
+            source.sendFailure(Component.literal("Unknown group " + group));
+            return 0;
+        }
+        manager.getMetrics().reset();
+        source.sendSuccess(() -> Component.literal("Reset metrics of group " + group), true);
+        return 1;
+    }
+
+    private static void line(CommandSourceStack source, String format, Object... args) {
+        String text = String.format(Locale.ROOT, format, args);
+        source.sendSuccess(() -> Component.literal(text), false);
+    }
+
+    private static String latency(Histogram histogram) {
+        if (histogram.count() == 0) return "none yet";
+        return String.format(Locale.ROOT, "%d, p50 <=%.1fms, p99 <=%.1fms, max %.1fms", histogram.count(),
+                histogram.percentile(0.50) / 1e6, histogram.percentile(0.99) / 1e6, histogram.max() / 1e6);
+    }
+
+    private static String playerName(CommandSourceStack source, UUID id) {
+        ServerPlayer player = source.getServer().getPlayerList().getPlayer(id);
+        return player != null ? player.getName().getString() : id.toString();
+    }
+
+    private static int traceStatus(CommandSourceStack source) {
+        ActionTrace trace = ActionTrace.SERVER;
+        line(source, "Click trace %s, sampling 1 in %d, %d event(s) recorded (last %d kept)",
+                trace.isEnabled() ? "on" : "off", trace.getSampleEvery(), trace.getRecorded(), ActionTrace.CAPACITY);
+        return trace.isEnabled() ? 1 : 0;
+    }
+
+    private static int setTrace(CommandSourceStack source, boolean enabled, int sampleEvery) {
+        ActionTrace.SERVER.configure(enabled, sampleEvery);
+        ActionTrace.CLIENT.configure(enabled, sampleEvery);
+        source.sendSuccess(() -> Component.literal("Click trace " + (enabled ? "on" : "off") + ", sampling 1 in " + sampleEvery), true);
+        return 1;
+    }
+
+    private static int dumpTrace(CommandSourceStack source, int count) {
+        ActionTrace.Snapshot server = ActionTrace.SERVER.snapshot(count);
+        // in singleplayer the client's half of each round trip is in the same JVM
+        ActionTrace.Snapshot client = ActionTrace.CLIENT.snapshot(count);
+        String name = "omnipack-trace-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".log";
+        Path file = source.getServer().getServerDirectory().resolve(name);
+
+        Util.ioPool().execute(() -> ActionTrace.write(file, server, client));
+        source.sendSuccess(() -> Component.literal("Writing " + (server.size() + client.size()) + " traced event(s) to " + name), true);
+        return server.size() + client.size();
+    }
+}
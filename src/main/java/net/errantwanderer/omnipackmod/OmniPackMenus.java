@@ -0,0 +1,21 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.function.Supplier;
+
+import net.errantwanderer.omnipackmod.storage.SharedStorageMenu;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.world.flag.FeatureFlags;
+import net.minecraft.world.inventory.MenuType;
+import net.neoforged.neoforge.registries.DeferredRegister;
+
+/**
+ * Menu types registered by the mod.
+ */
+public final class OmniPackMenus {
+    public static final DeferredRegister<MenuType<?>> MENUS = DeferredRegister.create(Registries.MENU, OmniPackMod.MOD_ID);
+
+    public static final Supplier<MenuType<SharedStorageMenu>> SHARED_STORAGE =
+            MENUS.register("shared_storage", () -> new MenuType<>(SharedStorageMenu::new, FeatureFlags.DEFAULT_FLAGS));
+
+    private OmniPackMenus() { }
+}
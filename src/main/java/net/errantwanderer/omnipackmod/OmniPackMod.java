@@ -9,15 +9,23 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.config.ModConfig;
 import net.neoforged.fml.ModContainer;
+import net.neoforged.fml.event.config.ModConfigEvent;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.BuildCreativeModeTabContentsEvent;
+import net.neoforged.neoforge.event.RegisterCommandsEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 
 import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import net.neoforged.neoforge.common.util.TriState;
+import net.neoforged.neoforge.event.entity.player.ItemEntityPickupEvent;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent.PlayerLoggedInEvent;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent.PlayerLoggedOutEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent.PlayerRespawnEvent;
 
+import net.errantwanderer.omnipackmod.metrics.ActionTrace;
+import net.errantwanderer.omnipackmod.replication.ReplicationService;
 import net.minecraft.server.level.ServerPlayer;
 
 @Mod(OmniPackMod.MOD_ID)
@@ -25,20 +33,32 @@ public class OmniPackMod {
     public static final String MOD_ID = "omnipackmod";
     public static final Logger LOGGER = LogUtils.getLogger();
 
-    private static SharedInventoryManager sharedInventoryManager;
+    private static SharedInventoryGroups sharedInventoryGroups;
+    // null unless replicationRole is set (and valid) for the running server
+    private static ReplicationService replication;
 
     public OmniPackMod(IEventBus modEventBus, ModContainer modContainer) {
         modEventBus.addListener(this::commonSetup);
         NeoForge.EVENT_BUS.register(this); // registers @SubscribeEvent instance methods
         modEventBus.addListener(this::addCreative);
+        modEventBus.addListener(this::onConfigLoading);
+        modEventBus.addListener(this::onConfigReloading);
         modContainer.registerConfig(ModConfig.Type.COMMON, Config.SPEC);
+        OmniPackMenus.MENUS.register(modEventBus);
 
-        // instantiate manager here
-        sharedInventoryManager = new SharedInventoryManager();
+        // instantiate group registry here; managers are created per group at server start
+        sharedInventoryGroups = new SharedInventoryGroups();
     }
 
-    public static SharedInventoryManager getSharedInventoryManager() {
-        return sharedInventoryManager;
+    public static SharedInventoryGroups getSharedInventoryGroups() {
+        return sharedInventoryGroups;
+    }
+
+    /**
+     * The manager of the group the player is in, or null if they are not (or no longer) online.
+     */
+    public static SharedInventoryManager getSharedInventoryManager(ServerPlayer player) {
+        return sharedInventoryGroups.managerFor(player);
     }
 
     private void commonSetup(FMLCommonSetupEvent event) {
@@ -47,33 +67,96 @@ public class OmniPackMod {
     private void addCreative(BuildCreativeModeTabContentsEvent event) {
     }
 
+    private void onConfigLoading(ModConfigEvent.Loading event) {
+        applyTraceConfig(event.getConfig());
+    }
+
+    private void onConfigReloading(ModConfigEvent.Reloading event) {
+        applyTraceConfig(event.getConfig());
+    }
+
+    private static void applyTraceConfig(ModConfig config) {
+        if (config.getSpec() != Config.SPEC) return;
+        ActionTrace.SERVER.configure(Config.TRACE_ENABLED.get(), Config.TRACE_SAMPLE_EVERY.get());
+        ActionTrace.CLIENT.configure(Config.TRACE_ENABLED.get(), Config.TRACE_SAMPLE_EVERY.get());
+    }
+
     @SubscribeEvent
     public void onServerStarting(ServerStartingEvent event) {
         MinecraftServer server = event.getServer(); // valid on NeoForge
-        sharedInventoryManager.initOnServerStart(server);
-        LOGGER.info("OmniPackMod: shared inventory manager initialized");
+        sharedInventoryGroups.initOnServerStart(server);
+        LOGGER.info("OmniPackMod: {} shared inventory group(s) initialized", sharedInventoryGroups.all().size());
+        replication = ReplicationService.start(server, sharedInventoryGroups);
+    }
+
+    @SubscribeEvent
+    public void onRegisterCommands(RegisterCommandsEvent event) {
+        OmniPackCommands.register(event.getDispatcher(), event.getBuildContext());
+    }
+
+    @SubscribeEvent
+    public void onServerStopping(ServerStoppingEvent event) {
+        if (replication != null) {
+            replication.stop();
+            replication = null;
+        }
+        sharedInventoryGroups.onServerStopping();
+        LOGGER.info("OmniPackMod: shared inventory saved");
+    }
+
+    @SubscribeEvent
+    public void onServerTickStart(ServerTickEvent.Pre event) {
+        MinecraftServer server = event.getServer();
+        if (server != null) {
+            sharedInventoryGroups.flushImmediateActions(server);
+        }
     }
 
     @SubscribeEvent
     public void onServerTick(ServerTickEvent.Post event) {
         MinecraftServer server = event.getServer();
         if (server != null) {
-            sharedInventoryManager.onServerTick(server);
+            sharedInventoryGroups.onServerTick(server);
+            if (replication != null) {
+                replication.tick();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public void onItemPickup(ItemEntityPickupEvent.Pre event) {
+        if (!Config.PICKUP_ROUTING.get()) return;
+        if (!(event.getPlayer() instanceof ServerPlayer player)) return;
+        if (event.canPickup().isFalse()) return; // another mod vetoed it
+
+        SharedInventoryManager manager = sharedInventoryGroups.managerFor(player);
+        if (manager != null && manager.pickUp(player, event.getItemEntity())) {
+            // already in the shared inventory; keep vanilla from adding it to the player's copy
+            event.setCanPickup(TriState.FALSE);
         }
     }
 
     @SubscribeEvent
     public void onPlayerLoggedIn(PlayerLoggedInEvent event) {
         if (event.getEntity() instanceof ServerPlayer player) {
-            sharedInventoryManager.onPlayerJoin(player);
-            LOGGER.info("OmniPackMod: player {} connected, synced shared inventory", player.getName().getString());
+            sharedInventoryGroups.onPlayerJoin(player);
+            LOGGER.info("OmniPackMod: player {} connected, synced shared inventory of group {}",
+                    player.getName().getString(), sharedInventoryGroups.groupOf(player.getUUID()));
+        }
+    }
+
+    @SubscribeEvent
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        // death and End exits replace the ServerPlayer; the group must follow the new entity
+        if (event.getEntity() instanceof ServerPlayer player) {
+            sharedInventoryGroups.onPlayerRespawn(player);
         }
     }
 
     @SubscribeEvent
     public void onPlayerLoggedOut(PlayerLoggedOutEvent event) {
         if (event.getEntity() instanceof ServerPlayer player) {
-            sharedInventoryManager.onPlayerLeave(player);
+            sharedInventoryGroups.onPlayerLeave(player);
             LOGGER.info("OmniPackMod: player {} disconnected", player.getName().getString());
         }
     }
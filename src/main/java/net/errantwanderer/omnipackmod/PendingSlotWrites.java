@@ -0,0 +1,96 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Slot-indexed coalescing buffer of player writes waiting to be applied to the shared inventory.
+ *
+ * - One entry per slot in fixed parallel arrays, no per-write objects
+ * - A player writing the same slot again before it is applied just replaces the requested state;
+ *   the original base stack/version is kept, so the eventual version check still sees the
+ *   whole run as one edit
+ * - A different player's write to an already pending slot is the caller's business
+ *   (SharedInventoryManager applies the pending one first so versioning arbitrates)
+ *
+ * Server thread only.
+ */
+final class PendingSlotWrites {
+    private final ItemStack[] requested;
+    private final ItemStack[] base;
+    private final long[] baseVersion;
+    private final UUID[] writer;
+    private final long[] timestamp;
+    private long pendingMask;
+
+    PendingSlotWrites(int slotCount) {
+        this.requested = new ItemStack[slotCount];
+        this.base = new ItemStack[slotCount];
+        this.baseVersion = new long[slotCount];
+        this.writer = new UUID[slotCount];
+        this.timestamp = new long[slotCount];
+    }
+
+    boolean isEmpty() {
+        return pendingMask == 0L;
+    }
+
+    boolean isPending(int slot) {
+        return (pendingMask & (1L << slot)) != 0L;
+    }
+
+    long pendingMask() {
+        return pendingMask;
+    }
+
+    void put(int slot, UUID player, ItemStack requestedStack, ItemStack baseStack, long baseVersionOfWrite, long time) {
+        if (isPending(slot) && player.equals(writer[slot])) {
+            requested[slot] = requestedStack;
+            timestamp[slot] = time;
+            return;
+        }
+
+        requested[slot] = requestedStack;
+        base[slot] = baseStack;
+        baseVersion[slot] = baseVersionOfWrite;
+        writer[slot] = player;
+        timestamp[slot] = time;
+        pendingMask |= 1L << slot;
+    }
+
+    void remove(int slot) {
+        pendingMask &= ~(1L << slot);
+        requested[slot] = null;
+        base[slot] = null;
+        writer[slot] = null;
+    }
+
+    void clear() {
+        pendingMask = 0L;
+        Arrays.fill(requested, null);
+        Arrays.fill(base, null);
+        Arrays.fill(writer, null);
+    }
+
+    ItemStack requested(int slot) {
+        return requested[slot];
+    }
+
+    ItemStack base(int slot) {
+        return base[slot];
+    }
+
+    long baseVersion(int slot) {
+        return baseVersion[slot];
+    }
+
+    UUID writer(int slot) {
+        return writer[slot];
+    }
+
+    long timestamp(int slot) {
+        return timestamp[slot];
+    }
+}
@@ -0,0 +1,258 @@
+package net.errantwanderer.omnipackmod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.errantwanderer.omnipackmod.metrics.MetricsDump;
+import net.errantwanderer.omnipackmod.persistence.GroupMembershipSavedData;
+import net.errantwanderer.omnipackmod.storage.SharedStorageMenu;
+import net.minecraft.Util;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+/**
+ * Registry of independent shared inventories, one SharedInventoryManager per named group.
+ *
+ * - Membership is persisted in GroupMembershipSavedData; unassigned players use the default group
+ * - Managers are created on first use and keep their own SavedData file and journal
+ * - Each manager only ever sees its own online members, so detection and broadcasts scale with
+ *   the group, not the server
+ * - Groups with no online members and no outstanding work are skipped entirely on tick
+ * - All groups share one per-tick TickBudget (tickBudgetMicros). Phases run in priority order
+ *   (detect and apply before sync, persistence last), group by group; when the budget runs out
+ *   the scheduler remembers the phase and group it stopped at and continues there next tick
+ * - Client clicks are rate limited per player (ActionRateLimiter) and committed as they arrive,
+ *   but broadcast in one delta per tick per group (flushImmediateActions), however many
+ *   arrived in between
+ * - Every metricsDumpIntervalSeconds, each group's metrics are appended to a file in the server
+ *   directory (MetricsDump); the rows are built here and written on the IO pool
+ *
+ * Server thread only.
+ */
+public class SharedInventoryGroups {
+    public static final String DEFAULT_GROUP = "default";
+    // group names end up in file names
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z0-9_-]{1,32}");
+
+    private final Map<String, SharedInventoryManager> managers = new LinkedHashMap<>();
+    private final Map<UUID, SharedInventoryManager> managerByOnlinePlayer = new HashMap<>();
+    // managers with work, taken when a cycle over all phases starts and kept until it completes,
+    // so groupCursor indexes the same list on every tick of a budget-split cycle
+    private final List<SharedInventoryManager> active = new ArrayList<>();
+    private static final SharedInventoryManager.Phase[] PHASES = SharedInventoryManager.Phase.values();
+
+    private final TickBudget budget = new TickBudget();
+    private final ActionRateLimiter actionLimiter = new ActionRateLimiter();
+    // where the last tick stopped when it ran out of budget
+    private int phaseCursor = 0;
+    private int groupCursor = 0;
+    private GroupMembershipSavedData membership;
+    private MinecraftServer server;
+
+    public static boolean isValidName(String group) {
+        return VALID_NAME.matcher(group).matches();
+    }
+
+    public void initOnServerStart(MinecraftServer server) {
+        // integrated servers restart with the same registry, drop everything from the previous world
+        managers.clear();
+        managerByOnlinePlayer.clear();
+        actionLimiter.clear();
+        resetCycle();
+        this.server = server;
+        this.membership = server.overworld().getDataStorage().computeIfAbsent(GroupMembershipSavedData.TYPE);
+
+        // open every known group now so journals are replayed before anyone connects
+        getOrCreate(DEFAULT_GROUP);
+        for (String group : membership.groupNames()) {
+            getOrCreate(group);
+        }
+    }
+
+    public void onServerStopping() {
+        for (SharedInventoryManager manager : managers.values()) {
+            manager.onServerStopping();
+        }
+        managers.clear();
+        managerByOnlinePlayer.clear();
+        resetCycle();
+        server = null;
+    }
+
+    private void resetCycle() {
+        active.clear();
+        phaseCursor = 0;
+        groupCursor = 0;
+    }
+
+    /**
+     * Call at the start of a server tick: one broadcast for the client actions received since
+     * the previous tick. Not budgeted, players are waiting on these.
+     */
+    public void flushImmediateActions(MinecraftServer server) {
+        for (SharedInventoryManager manager : managers.values()) {
+            manager.flushImmediateActions(server);
+        }
+    }
+
+    public void onServerTick(MinecraftServer server) {
+        dumpMetricsIfDue(server);
+
+        List<SharedInventoryManager> ordered = active;
+        if (phaseCursor == 0 && groupCursor == 0) {
+            // a new cycle; managers that gain work mid-cycle join the next one
+            ordered.clear();
+            for (SharedInventoryManager manager : managers.values()) {
+                if (manager.needsTick()) ordered.add(manager);
+            }
+            if (ordered.isEmpty()) return;
+        }
+        for (SharedInventoryManager manager : ordered) {
+            manager.beginTick();
+        }
+
+        budget.begin(Config.TICK_BUDGET_MICROS.get());
+        boolean first = true;
+        while (phaseCursor < PHASES.length) {
+            SharedInventoryManager.Phase phase = PHASES[phaseCursor];
+            while (groupCursor < ordered.size()) {
+                // the first call of a tick always runs, so a spent budget still makes progress
+                if ((!first && budget.exhausted())
+                        || !ordered.get(groupCursor).runPhase(phase, server, budget)) {
+                    budget.deferRemaining(phase.name());
+                    budget.end();
+                    return;
+                }
+                first = false;
+                groupCursor++;
+            }
+            groupCursor = 0;
+            phaseCursor++;
+        }
+        phaseCursor = 0;
+        budget.end();
+    }
+
+    private void dumpMetricsIfDue(MinecraftServer server) {
+        int intervalSeconds = Config.METRICS_DUMP_INTERVAL_SECONDS.get();
+        if (intervalSeconds <= 0 || server.getTickCount() % (intervalSeconds * 20) != 0) return;
+
+        MetricsDump.Format format = Config.METRICS_DUMP_FORMAT.get();
+        Instant now = Instant.now();
+        StringBuilder rows = new StringBuilder();
+        for (SharedInventoryManager manager : managers.values()) {
+            rows.append(MetricsDump.row(format, now, manager.getGroupId(), manager.getMembers().size(), manager.getMetrics()));
+        }
+        String content = rows.toString();
+        Path file = MetricsDump.fileFor(server.getServerDirectory(), format);
+        Util.ioPool().execute(() -> MetricsDump.write(file, format, content));
+    }
+
+    public TickBudget getTickBudget() {
+        return budget;
+    }
+
+    public ActionRateLimiter getActionLimiter() {
+        return actionLimiter;
+    }
+
+    public void onPlayerJoin(ServerPlayer player) {
+        SharedInventoryManager manager = getOrCreate(groupOf(player.getUUID()));
+        managerByOnlinePlayer.put(player.getUUID(), manager);
+        manager.onPlayerJoin(player);
+    }
+
+    /**
+     * Call with the new entity after a respawn; the group keeps the player, with the new entity.
+     */
+    public void onPlayerRespawn(ServerPlayer player) {
+        SharedInventoryManager manager = managerByOnlinePlayer.get(player.getUUID());
+        if (manager != null) {
+            manager.onPlayerRespawn(player);
+        } else {
+            onPlayerJoin(player);
+        }
+    }
+
+    public void onPlayerLeave(ServerPlayer player) {
+        actionLimiter.forget(player.getUUID());
+        SharedInventoryManager manager = managerByOnlinePlayer.remove(player.getUUID());
+        if (manager != null) {
+            manager.onPlayerLeave(player);
+        }
+    }
+
+    /**
+     * Moves an online player to another group. Their inventory is replaced by the new group's;
+     * what they held stays with the old group.
+     */
+    public void moveToGroup(ServerPlayer player, String group) {
+        if (!isValidName(group)) {
+            throw new IllegalArgumentException("invalid group name: " + group);
+        }
+        SharedInventoryManager current = managerByOnlinePlayer.get(player.getUUID());
+        if (current != null && current.getGroupId().equals(group)) return;
+
+        if (player.containerMenu instanceof SharedStorageMenu) {
+            // the open page belongs to the old group's storage
+            player.closeContainer();
+        }
+        if (current != null) {
+            // commit anything the player changed in the old group before leaving it
+            current.handleImmediatePlayerAction(player, server);
+            onPlayerLeave(player);
+        }
+        membership.setGroup(player.getUUID(), group, DEFAULT_GROUP);
+        onPlayerJoin(player);
+    }
+
+    /**
+     * Drops a player's saved group assignment, putting them back in the default group without
+     * touching any inventory. For players that are gone for good (the load test's bots); call
+     * after onPlayerLeave.
+     */
+    public void clearMembership(UUID player) {
+        if (membership != null) {
+            membership.setGroup(player, DEFAULT_GROUP, DEFAULT_GROUP);
+        }
+    }
+
+    public String groupOf(UUID player) {
+        return membership != null ? membership.groupOf(player, DEFAULT_GROUP) : DEFAULT_GROUP;
+    }
+
+    @Nullable
+    public SharedInventoryManager managerFor(ServerPlayer player) {
+        return managerByOnlinePlayer.get(player.getUUID());
+    }
+
+    @Nullable
+    public SharedInventoryManager get(String group) {
+        return managers.get(group);
+    }
+
+    public SharedInventoryManager getOrCreate(String group) {
+        SharedInventoryManager manager = managers.get(group);
+        if (manager == null) {
+            manager = new SharedInventoryManager(group);
+            manager.initOnServerStart(server);
+            managers.put(group, manager);
+        }
+        return manager;
+    }
+
+    public Collection<SharedInventoryManager> all() {
+        return Collections.unmodifiableCollection(managers.values());
+    }
+}
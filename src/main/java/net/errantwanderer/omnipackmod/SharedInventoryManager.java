@@ -1,69 +1,462 @@
 package net.errantwanderer.omnipackmod;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.jetbrains.annotations.Nullable;
+
+import net.errantwanderer.omnipackmod.metrics.SharedInventoryMetrics;
+import net.errantwanderer.omnipackmod.persistence.SharedInventorySavedData;
+import net.errantwanderer.omnipackmod.persistence.SharedInventoryWriter;
+import net.errantwanderer.omnipackmod.persistence.TransactionJournal;
+import net.errantwanderer.omnipackmod.replication.ReplicationRole;
+import net.errantwanderer.omnipackmod.network.SharedInventorySyncPayload;
+import net.errantwanderer.omnipackmod.storage.PagedSharedStorage;
+import net.minecraft.Util;
 import net.minecraft.core.NonNullList;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.stats.Stats;
+import net.minecraft.world.Container;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ResultContainer;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.level.storage.LevelResource;
+import net.neoforged.neoforge.network.PacketDistributor;
 
 /**
  * Server-authoritative shared inventory.
  *
- * - Detects per-player diffs and enqueues SlotChangeRequest
- * - Applies queued requests sequentially (synchronized)
- * - Broadcasts authoritative inventory to all players using vanilla inventory packets
+ * - Detects per-player diffs and queues them in a slot-indexed coalescing buffer
+ *   (PendingSlotWrites), so a pass applies at most one write per slot
+ *   (only slots flagged dirty by InventoryMixin, plus a periodic full scan)
+ * - Single writer: everything below runs on the server thread without locks; writes from
+ *   elsewhere (replication) are queued to the server thread first
+ * - Applies queued requests sequentially; each request carries the slot
+ *   version its snapshot was based on, and stale writes are merged by count delta
+ *   or rejected instead of blindly overwriting; a rejected write is also undone in the
+ *   requester's menu, so the items it moved out are not left there twice
+ * - Broadcasts only the slots changed by the last processing pass to all members,
+ *   as one SharedInventorySyncPayload encoded once and shared by every connection
+ * - Full resync is reserved for join and desync recovery
+ * - Slots written by the manager are marked as already sent in the player's menus, so vanilla's
+ *   broadcastChanges does not send them a second time
+ * - Per-player baselines are copy-on-write: every member references one immutable
+ *   SharedSnapshot per commit epoch and keeps its own entries only for slots where its
+ *   inventory has diverged from it (an unapplied edit)
+ * - Interest-based: every member's server-side inventory takes each delta at once, only the
+ *   packet is deferred. Members looking at an inventory or container are sent every delta at
+ *   once; the rest are sent hotbar/armor/offhand at once and the remaining slots coalesced
+ *   every deferredSyncIntervalTicks, or as soon as they open a screen or switch hotbar slot
+ * - Persists to a world SavedData through a background, atomic-rename writer
+ * - Journals every applied write for crash replay and point-in-time rollback
+ * - Routes item pickups straight into the shared slots (pickUp), merging through the item index
+ * - Owns the group's PagedSharedStorage, the warehouse behind /omnipack storage
+ * - Serves one inventory group (see SharedInventoryGroups) and only ever touches that group's
+ *   online members
+ * - Records scan time, queue depth, write outcomes, broadcast volume and persistence latency
+ *   in its SharedInventoryMetrics (/omnipack stats)
+ * - Takes part in cross-server replication (ReplicationService): as the primary its commits are
+ *   published as versioned deltas and replicas' writes are queued like local ones; as a replica
+ *   its own commits are collected for the primary and the primary's state is applied over them
  *
  * NOTE: This class intentionally reuses vanilla inventory slots (main + armor + offhand).
  */
 public class SharedInventoryManager {
     // main (36) + armor (4) + offhand (1) = 41
     public static final int SHARED_SLOT_COUNT = 41;
+    private static final int MAIN_SLOT_COUNT = 36;
+    private static final int OFFHAND_SLOT = 40;
+    // hotbar 0-8, armor 36-39 and offhand 40 are always synced immediately
+    private static final long PRIORITY_SLOTS = 0x1FFL | (0x1FL << 36);
 
+    private final String groupId;
+    // online players of this group, in join order; the only players ticks and broadcasts visit
+    private final List<ServerPlayer> members = new ArrayList<>();
     private final NonNullList<ItemStack> sharedInventory = NonNullList.withSize(SHARED_SLOT_COUNT, ItemStack.EMPTY);
-    private final Map<UUID, ItemStack[]> lastSnapshotPerPlayer = new HashMap<>();
-    private final ConcurrentLinkedQueue<SlotChangeRequest> requestQueue = new ConcurrentLinkedQueue<>();
-    private final Object applyLock = new Object();
-    private volatile long lastProcessedTs = 0L;
+    // kept in step with sharedInventory by commitSlot; answers merge-target and count queries
+    private final ItemSlotIndex slotIndex = new ItemSlotIndex(SHARED_SLOT_COUNT);
+    // StackFingerprint of each shared slot, refreshed by commitSlot
+    private final int[] sharedFingerprints = new int[SHARED_SLOT_COUNT];
+    // bumped on every committed write; a request based on an older version is a concurrent edit
+    private final long[] slotVersions = new long[SHARED_SLOT_COUNT];
+    // who wrote each slot last, and the version before their run of consecutive writes began;
+    // a player's own back-to-back writes within one pass are sequential, not concurrent
+    private final UUID[] lastWriter = new UUID[SHARED_SLOT_COUNT];
+    private final long[] writerRunBaseVersion = new long[SHARED_SLOT_COUNT];
+    private final Map<UUID, PlayerSnapshot> lastSnapshotPerPlayer = new HashMap<>();
+    // shared state as of the last publish; rebuilt lazily once commitCount moves on
+    private SharedSnapshot publishedSnapshot;
+    private final PendingSlotWrites pendingWrites = new PendingSlotWrites(SHARED_SLOT_COUNT);
+    private long tickCounter = 0L;
+    // next member to visit in the current detection round, see detectMembers
+    private int detectCursor = 0;
+    private boolean fullScanRound = false;
+    private boolean deferredSyncDue = false;
+    // player actions detected since the last immediate pass, see recordPlayerAction
+    private boolean immediatePassPending = false;
+    private long lastJournalFlushTick = 0L;
+    // bumped on every committed write; also the epoch of publishedSnapshot
+    private long commitCount = 0L;
+    // wall clock read once per pass and stamped on every write detected in it
+    private long passTimestamp = 0L;
+    // shared slots written since the last broadcast
+    private long changedSharedSlots = 0L;
+    // incremented for every delta payload (broadcast, catch-up or deferred flush) and carried in
+    // it; a member's client drops a delta whose epoch is not newer than the last one it applied
+    private long syncEpoch = 0L;
+    private final SharedInventoryMetrics metrics = new SharedInventoryMetrics();
+
+    private ReplicationRole replicationRole = ReplicationRole.OFF;
+    // primary: identifies this run's slot versions; they restart at 0 with the server
+    private long replicationEpoch = 0L;
+    // primary: slots to publish to replicas since the last drain
+    private long replicationChanged = 0L;
+    // primary: replicas' writes rejected since the last drain, for their server to undo
+    private final List<RejectedWrite> replicationRejections = new ArrayList<>();
+    // replica: local writes not yet sent to the primary, coalesced per slot
+    private PendingSlotWrites replicationOutbox;
+    // replica: the primary's epoch and slot versions this state was last brought up to
+    private long replicatedEpoch = 0L;
+    private final long[] replicatedVersions = new long[SHARED_SLOT_COUNT];
 
-    public SharedInventoryManager() { }
+    private SharedInventoryWriter writer;
+    private TransactionJournal journal;
+    // JournalSeq of the SavedData loaded at startup
+    private long savedJournalSeq = 0L;
+    private PagedSharedStorage storage;
+    private boolean persistDirty = false;
+    private long lastPersistTick = 0L;
+
+    public SharedInventoryManager(String groupId) {
+        this.groupId = groupId;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public List<ServerPlayer> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
 
     public void initOnServerStart(MinecraftServer server) {
-        // TODO: persistent load/store if you want inventory to survive restarts
+        // the manager outlives integrated servers, so start every world from a clean slate
+        lastSnapshotPerPlayer.clear();
+        publishedSnapshot = null;
+        members.clear();
+        detectCursor = 0;
+        pendingWrites.clear();
+        Arrays.fill(slotVersions, 0L);
+        Arrays.fill(lastWriter, null);
+        Arrays.fill(writerRunBaseVersion, 0L);
+        changedSharedSlots = 0L;
+        persistDirty = false;
+
+        replicationRole = Config.REPLICATION_ROLE.get();
+        replicationEpoch = replicationRole == ReplicationRole.PRIMARY ? new Random().nextLong() | 1L : 0L;
+        replicationChanged = 0L;
+        replicationRejections.clear();
+        replicationOutbox = replicationRole == ReplicationRole.REPLICA ? new PendingSlotWrites(SHARED_SLOT_COUNT) : null;
+        replicatedEpoch = 0L;
+        Arrays.fill(replicatedVersions, 0L);
+
+        SharedInventorySavedData saved = server.overworld().getDataStorage().computeIfAbsent(SharedInventorySavedData.typeFor(groupId));
+        saved.copyInto(sharedInventory);
+
+        Path file = server.getWorldPath(LevelResource.ROOT).resolve("data").resolve(SharedInventorySavedData.idFor(groupId) + ".dat");
+        writer = new SharedInventoryWriter(file, server.registryAccess(), metrics.snapshotWriteNanos()::record);
+
+        savedJournalSeq = saved.journalSeq();
+        journal = Config.JOURNAL_ENABLED.get() ? openJournal(server, savedJournalSeq) : null;
+        slotIndex.clear();
+        for (int slot = 0; slot < SHARED_SLOT_COUNT; slot++) {
+            slotIndex.set(slot, sharedInventory.get(slot));
+            sharedFingerprints[slot] = StackFingerprint.of(sharedInventory.get(slot));
+        }
+
+        int pages = Config.STORAGE_PAGES.get();
+        storage = pages > 0
+                ? PagedSharedStorage.open(modDataFile(server, "storage", ".bin"), pages, server.registryAccess())
+                : null;
     }
 
-    public void onPlayerJoin(ServerPlayer player) {
-        UUID id = player.getUUID();
-        lastSnapshotPerPlayer.put(id, copySharedToArray());
+    /**
+     * Opens the journal, replays whatever the snapshot missed (e.g. after a crash) and
+     * makes sure the journal starts with a checkpoint of the recovered state.
+     */
+    private TransactionJournal openJournal(MinecraftServer server, long snapshotSeq) {
+        Path file = modDataFile(server, "journal", ".bin");
+        try {
+            TransactionJournal opened = TransactionJournal.open(file, server.registryAccess(), snapshotSeq, metrics.journalFlushNanos()::record);
+            int replayed = opened.replayAfter(snapshotSeq, sharedInventory::set);
+            if (replayed > 0) {
+                OmniPackMod.LOGGER.info("OmniPackMod: replayed {} journal entries newer than the saved snapshot", replayed);
+                persistDirty = true;
+            }
+            long maxBytes = Config.JOURNAL_MAX_SIZE_MB.get() * 1024L * 1024L;
+            opened.checkpointIfNeeded(maxBytes, sharedInventory, System.currentTimeMillis());
+            return opened;
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.error("OmniPackMod: could not open journal {}, continuing without it", file, e);
+            return null;
+        }
+    }
 
-        // Apply authoritative inventory server-side
-        applySharedToPlayerInventory(player);
+    /**
+     * Per-group file under <world>/omnipackmod; the default group keeps the unsuffixed name.
+     */
+    private Path modDataFile(MinecraftServer server, String baseName, String extension) {
+        String name = SharedInventoryGroups.DEFAULT_GROUP.equals(groupId) ? baseName : baseName + "_" + groupId;
+        return server.getWorldPath(LevelResource.ROOT).resolve(OmniPackMod.MOD_ID).resolve(name + extension);
+    }
 
-        // Send per-slot update packets so client UI shows authoritative inventory
-        sendFullInventoryToPlayer(player);
+    /**
+     * Rolls the shared inventory back to its journaled state at {@code timestamp} (epoch millis).
+     * The rollback itself is journaled and broadcast like any other write.
+     * Returns the number of slots changed, or -1 if the journal does not reach back that far.
+     */
+    public int rollbackTo(long timestamp, UUID actor) {
+        if (journal == null) return -1;
+
+        NonNullList<ItemStack> target = NonNullList.withSize(SHARED_SLOT_COUNT, ItemStack.EMPTY);
+        try {
+            if (!journal.stateAt(timestamp, target)) return -1;
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.error("OmniPackMod: failed to read journal for rollback", e);
+            return -1;
+        }
+
+        long now = System.currentTimeMillis();
+        int changed = 0;
+        for (int slot = 0; slot < SHARED_SLOT_COUNT; slot++) {
+            ItemStack stack = target.get(slot);
+            if (StackFingerprint.matches(sharedInventory.get(slot), sharedFingerprints[slot], stack)) continue;
+
+            commitSlot(slot, stack, TransactionJournal.ROLLBACK, actor, now);
+            changed++;
+        }
+
+        if (changed > 0) {
+            journal.flush();
+        }
+        return changed;
+    }
+
+    /**
+     * Call from ServerStoppingEvent: hands the final state to the writer and waits for it to hit disk.
+     */
+    public void onServerStopping() {
+        if (journal != null) {
+            journal.close();
+        }
+        if (writer != null) {
+            if (persistDirty) {
+                writer.submit(SharedInventorySavedData.fromSlots(sharedInventory, journalSeq()));
+                persistDirty = false;
+            }
+            writer.close();
+        }
+        if (storage != null) {
+            storage.close();
+        }
+        journal = null;
+        writer = null;
+        storage = null;
+    }
+
+    private long journalSeq() {
+        // without a journal, keep the saved sequence so a later one still numbers above it
+        return journal != null ? journal.lastSequence() : savedJournalSeq;
+    }
+
+    public void onPlayerJoin(ServerPlayer player) {
+        members.add(player);
+        // Apply authoritative inventory server-side and send every slot so the client UI matches
+        resyncPlayer(player);
+    }
+
+    /**
+     * Respawn (death, or leaving the End) replaces the player's entity. Swap the new one in at
+     * the old one's place in the member list, so detection and broadcasts stop touching the
+     * discarded entity, and resync it, since its inventory was rebuilt without us.
+     */
+    public void onPlayerRespawn(ServerPlayer player) {
+        boolean replaced = false;
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i).getUUID().equals(player.getUUID())) {
+                members.set(i, player);
+                replaced = true;
+                break;
+            }
+        }
+        if (!replaced) {
+            members.add(player);
+        }
+        resyncPlayer(player);
     }
 
     public void onPlayerLeave(ServerPlayer player) {
+        int index = members.indexOf(player);
+        if (index >= 0) {
+            members.remove(index);
+            if (index < detectCursor) detectCursor--; // keep the round's position
+        }
         lastSnapshotPerPlayer.remove(player.getUUID());
     }
 
-    // Call from ServerTickEvent.Post
+    /**
+     * False once the group has nobody online and nothing left to apply, broadcast or persist,
+     * so SharedInventoryGroups can skip it until that changes.
+     */
+    public boolean needsTick() {
+        return !members.isEmpty() || !pendingWrites.isEmpty()
+                || changedSharedSlots != 0L || deferredSyncDue || persistDirty || (journal != null && journal.hasUnflushed())
+                || (storage != null && storage.needsTick());
+    }
+
+    /**
+     * One server tick's work, split into phases that SharedInventoryGroups runs under a shared
+     * TickBudget. Every phase keeps its progress in the manager, so work cut short by the budget
+     * simply continues next tick:
+     * - DETECT resumes at the member it stopped at
+     * - APPLY leaves unapplied writes pending
+     * - BROADCAST and DEFERRED_SYNC keep their masks
+     * - PERSIST is retried until it has run
+     */
+    public enum Phase { DETECT, APPLY, BROADCAST, DEFERRED_SYNC, PERSIST }
+
+    /**
+     * Starts this manager's tick; call once per server tick before any phase.
+     */
+    public void beginTick() {
+        tickCounter++;
+        passTimestamp = System.currentTimeMillis();
+        int deferredInterval = Config.DEFERRED_SYNC_INTERVAL_TICKS.get();
+        if (deferredInterval > 0 && tickCounter % deferredInterval == 0) {
+            deferredSyncDue = true;
+        }
+    }
+
+    /**
+     * Runs (or continues) one phase. Returns true if the phase finished, false if it stopped
+     * because the budget ran out. Each call does at least one unit of work, so a tick always
+     * makes progress even when the budget is already spent.
+     */
+    public boolean runPhase(Phase phase, MinecraftServer server, TickBudget budget) {
+        return switch (phase) {
+            case DETECT -> {
+                long start = System.nanoTime();
+                boolean finished = detectMembers(budget);
+                if (!members.isEmpty()) metrics.recordScan(System.nanoTime() - start);
+                yield finished;
+            }
+            case APPLY -> processQueuedRequests(budget);
+            case BROADCAST -> {
+                if (changedSharedSlots != 0L) broadcastChangedSlotsToAll(server);
+                yield true;
+            }
+            case DEFERRED_SYNC -> {
+                if (deferredSyncDue) {
+                    deferredSyncDue = false;
+                    flushDeferredSlots(server);
+                }
+                yield true;
+            }
+            case PERSIST -> {
+                persistIfDue();
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Unbudgeted tick: every phase to completion.
+     */
     public void onServerTick(MinecraftServer server) {
-        // 1) detect diffs from players' inventories and enqueue requests
-        for (ServerPlayer p : server.getPlayerList().getPlayers()) {
-            detectAndEnqueuePlayerDiff(p);
+        TickBudget unlimited = new TickBudget();
+        unlimited.begin(0L);
+        beginTick();
+        for (Phase phase : Phase.values()) {
+            runPhase(phase, server, unlimited);
         }
+    }
 
-        // 2) apply queued requests sequentially
-        processQueuedRequests();
+    /**
+     * Diff detection and lazy catch-up, one member at a time. A round over all members may span
+     * several ticks; whether it is a full-scan round is decided when it starts.
+     */
+    private boolean detectMembers(TickBudget budget) {
+        if (detectCursor == 0) {
+            fullScanRound = isFullScanRound();
+        }
+        while (detectCursor < members.size()) {
+            ServerPlayer p = members.get(detectCursor++);
+            long dirty = consumeDirtySlots(p);
+            detectAndEnqueuePlayerDiff(p, fullScanRound ? DirtySlotTracker.ALL_SLOTS : dirty);
+            catchUpIfInterested(p);
+            if (detectCursor < members.size() && budget.exhausted()) return false;
+        }
+        detectCursor = 0;
+        return true;
+    }
 
-        // 3) if changed, broadcast authoritative inventory to all
-        if (lastProcessedTs != 0L) {
-            broadcastSharedInventoryToAll(server);
-            lastProcessedTs = 0L;
+    /**
+     * Pushes journaled writes to disk (rotating the journal when it is due), then hands a snapshot to the background writer if
+     * anything changed since the last one.
+     */
+    private void persistIfDue() {
+        if (journal != null && tickCounter - lastJournalFlushTick >= Config.JOURNAL_SYNC_INTERVAL_TICKS.get()) {
+            journal.flush();
+            // rotates once the file outgrows journalMaxSizeMb; otherwise only a size check
+            journal.checkpointIfNeeded(Config.JOURNAL_MAX_SIZE_MB.get() * 1024L * 1024L, sharedInventory, passTimestamp);
+            lastJournalFlushTick = tickCounter;
+        }
+        if (persistDirty && writer != null && tickCounter - lastPersistTick >= Config.PERSIST_INTERVAL_TICKS.get()) {
+            writer.submit(SharedInventorySavedData.fromSlots(sharedInventory, journalSeq()));
+            persistDirty = false;
+            lastPersistTick = tickCounter;
+        }
+        if (storage != null) {
+            storage.onServerTick();
+        }
+    }
+
+    /**
+     * The group's paged warehouse, or null if storagePages is 0.
+     */
+    public PagedSharedStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Client report of whether an inventory-like screen is open (InventoryInterestPayload).
+     * Opening one flushes whatever was deferred for this player right away.
+     */
+    public void setViewingInventory(ServerPlayer player, boolean viewing) {
+        PlayerSnapshot snapshot = lastSnapshotPerPlayer.get(player.getUUID());
+        if (snapshot == null) return;
+        snapshot.viewing = viewing;
+        catchUpIfInterested(player);
+    }
+
+    /**
+     * Desync recovery: overwrite the player's inventory with the full shared state and
+     * resend every slot. Normal updates only ever carry changed slots.
+     */
+    public void resyncPlayer(ServerPlayer player) {
+        PlayerSnapshot fresh = new PlayerSnapshot(currentSnapshot());
+        PlayerSnapshot previous = lastSnapshotPerPlayer.put(player.getUUID(), fresh);
+        if (previous != null) {
+            fresh.viewing = previous.viewing;
         }
+        applySharedToPlayerInventory(player);
+        sendFullInventoryToPlayer(player);
     }
 
     /**
@@ -72,89 +465,780 @@ public class SharedInventoryManager {
      * result is broadcast to all without waiting for the next tick loop.
      */
     public void handleImmediatePlayerAction(ServerPlayer player, MinecraftServer server) {
-        // detect diff for just this player and enqueue resulting requests
-        detectAndEnqueuePlayerDiff(player);
+        passTimestamp = System.currentTimeMillis();
+
+        // detect diff for just this player and enqueue resulting requests;
+        // a click is rare enough that comparing every slot is cheaper than trusting the mask
+        consumeDirtySlots(player);
+        detectAndEnqueuePlayerDiff(player, DirtySlotTracker.ALL_SLOTS);
 
         // apply and broadcast immediately (safely)
         processQueuedRequests();
 
-        if (lastProcessedTs != 0L && server != null) {
-            broadcastSharedInventoryToAll(server);
-            lastProcessedTs = 0L;
+        if (changedSharedSlots != 0L && server != null) {
+            broadcastChangedSlotsToAll(server);
+        }
+    }
+
+    /**
+     * Call before running a client's clicks against its menu. Commits the player's own
+     * undetected edits and anything still pending, then brings every member's server-side copy up
+     * to date, so the clicks start from the current shared state and their diff carries the
+     * current slot versions instead of racing a write that has not reached this player yet.
+     */
+    public void beforePlayerAction(ServerPlayer player) {
+        passTimestamp = System.currentTimeMillis();
+        consumeDirtySlots(player);
+        detectAndEnqueuePlayerDiff(player, DirtySlotTracker.ALL_SLOTS);
+        processQueuedRequests();
+        refreshMemberCopies();
+    }
+
+    /**
+     * Batched variant of handleImmediatePlayerAction for client clicks: commits the player's diff
+     * and applies it to every member's server-side inventory now, so the next click (from any
+     * member) sees it, but leaves the broadcast to flushImmediateActions, so every action that
+     * arrives between two ticks shares one delta packet.
+     */
+    public void recordPlayerAction(ServerPlayer player) {
+        passTimestamp = System.currentTimeMillis();
+        consumeDirtySlots(player);
+        detectAndEnqueuePlayerDiff(player, DirtySlotTracker.ALL_SLOTS);
+        processQueuedRequests();
+        refreshMemberCopies();
+        immediatePassPending = true;
+    }
+
+    /**
+     * Broadcasts everything recorded by recordPlayerAction since the last call.
+     * Run once at the start of each server tick, ahead of the budgeted phases.
+     */
+    public void flushImmediateActions(MinecraftServer server) {
+        if (!immediatePassPending) return;
+        immediatePassPending = false;
+
+        processQueuedRequests();
+        if (changedSharedSlots != 0L) {
+            broadcastChangedSlotsToAll(server);
         }
     }
 
+    public long getSlotVersion(int slot) {
+        return slotVersions[slot];
+    }
+
     /* -------------------------
        Diff detection -> requests
        ------------------------- */
 
-    private void detectAndEnqueuePlayerDiff(ServerPlayer player) {
-        UUID id = player.getUUID();
-        ItemStack[] prev = lastSnapshotPerPlayer.get(id);
-        ItemStack[] currentSnapshot = takePlayerInventorySnapshot(player);
+    private boolean isFullScanRound() {
+        if (!Config.DIRTY_SLOT_TRACKING.get()) return true;
+        int interval = Config.FULL_SCAN_INTERVAL_TICKS.get();
+        return interval > 0 && tickCounter % interval == 0;
+    }
+
+    /**
+     * Always drains the mask, even on full-scan ticks, so stale bits don't trigger a second compare.
+     */
+    private static long consumeDirtySlots(ServerPlayer player) {
+        return ((DirtySlotTracker) player.getInventory()).omnipack$consumeDirtyMask();
+    }
+
+    /**
+     * Compares only the slots in {@code slotMask} against the player's last snapshot.
+     * Only changed slots are copied, into the player's diverged entries, so a tick where
+     * nothing changed allocates nothing.
+     */
+    private void detectAndEnqueuePlayerDiff(ServerPlayer player, long slotMask) {
+        detectAndEnqueueDiff(player.getUUID(), player.getInventory(), slotMask);
+    }
+
+    /**
+     * detectAndEnqueuePlayerDiff on any container standing in for the player's inventory;
+     * package-private so the JMH benchmarks (src/jmh) can drive it without a ServerPlayer.
+     */
+    void detectAndEnqueueDiff(UUID id, Container inv, long slotMask) {
+        PlayerSnapshot prev = lastSnapshotPerPlayer.get(id);
 
         if (prev == null) {
-            lastSnapshotPerPlayer.put(id, currentSnapshot);
+            lastSnapshotPerPlayer.put(id, baselineOf(inv));
             return;
         }
 
-        for (int slot = 0; slot < SHARED_SLOT_COUNT; slot++) {
-            ItemStack oldStack = prev[slot];
-            ItemStack newStack = currentSnapshot[slot];
+        int size = Math.min(SHARED_SLOT_COUNT, inv.getContainerSize());
+        long mask = slotMask;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
 
-            // ItemStack.matches checks item, count and nbt in modern mappings
-            if (!ItemStack.matches(oldStack, newStack)) {
-                // enqueue the player's desired state for that slot
-                requestQueue.add(new SlotChangeRequest(id, slot, newStack.copy(), System.currentTimeMillis()));
+            ItemStack newStack = slot < size ? inv.getItem(slot) : ItemStack.EMPTY;
+
+            // fingerprints decide almost every slot with one int compare; equal ones are
+            // confirmed with ItemStack.matches in case of a hash collision
+            ItemStack oldStack = prev.stack(slot);
+            int fingerprint = StackFingerprint.of(newStack);
+            if (fingerprint != prev.fingerprint(slot) || !ItemStack.matches(oldStack, newStack)) {
+                // queue the player's desired state for that slot, together with what it was based on;
+                // the copy is never mutated, so the snapshot and the pending write can share it
+                ItemStack copy = newStack.copy();
+                long baseVersion = prev.version(slot);
+                queueWrite(id, slot, copy, oldStack, baseVersion, passTimestamp);
+                prev.diverge(slot, copy, baseVersion, fingerprint);
             }
         }
+    }
 
-        lastSnapshotPerPlayer.put(id, currentSnapshot);
+    private void queueWrite(UUID player, int slot, ItemStack requested, ItemStack base, long baseVersion, long timestamp) {
+        if (pendingWrites.isPending(slot) && !player.equals(pendingWrites.writer(slot))) {
+            // a different player already has a write queued for this slot: apply it first so
+            // the version check arbitrates between the two exactly as if they came in separate passes
+            applyPendingWrite(slot);
+        }
+        pendingWrites.put(slot, player, requested, base, baseVersion, timestamp);
     }
 
     /* -------------------------
        Request processing
        ------------------------- */
 
-    private void processQueuedRequests() {
-        if (requestQueue.isEmpty()) return;
+    /**
+     * Applies at most one coalesced write per slot, so a pass is bounded by SHARED_SLOT_COUNT.
+     */
+    void processQueuedRequests() {
+        processQueuedRequests(null);
+    }
 
-        synchronized (applyLock) {
-            SlotChangeRequest req;
-            while ((req = requestQueue.poll()) != null) {
-                applyRequestToSharedInventory(req);
-                lastProcessedTs = req.timestamp;
+    /**
+     * With a budget, stops between slots once it is spent; the rest stays pending for next tick.
+     */
+    private boolean processQueuedRequests(TickBudget budget) {
+        if (pendingWrites.isEmpty()) return true;
+        metrics.recordQueueDepth(Long.bitCount(pendingWrites.pendingMask()));
+
+        long mask = pendingWrites.pendingMask();
+        boolean finished = true;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            applyPendingWrite(slot);
+            if (mask != 0L && budget != null && budget.exhausted()) {
+                finished = false;
+                break;
             }
         }
+        return finished;
     }
 
-    private void applyRequestToSharedInventory(SlotChangeRequest req) {
-        int slot = req.slotIndex;
-        if (slot < 0 || slot >= SHARED_SLOT_COUNT) return;
+    private void applyPendingWrite(int slot) {
+        UUID player = pendingWrites.writer(slot);
+        ItemStack requestedStack = pendingWrites.requested(slot);
+        ItemStack base = pendingWrites.base(slot);
+        long baseVersion = pendingWrites.baseVersion(slot);
+        long timestamp = pendingWrites.timestamp(slot);
+        pendingWrites.remove(slot);
 
-        ItemStack requestedStack = req.item;
-        if (!requestedStack.isEmpty()) {
-            int max = requestedStack.getMaxStackSize();
-            if (requestedStack.getCount() > max) {
-                requestedStack.setCount(max);
+        if (!requestedStack.isEmpty() && requestedStack.getCount() > requestedStack.getMaxStackSize()) {
+            requestedStack = requestedStack.copyWithCount(requestedStack.getMaxStackSize());
+        }
+
+        ItemStack resolved = requestedStack;
+        if (isConcurrentWrite(slot, player, baseVersion)) {
+            // someone else wrote this slot after the requester's snapshot was taken
+            resolved = mergeConcurrentWrite(sharedInventory.get(slot), base, requestedStack);
+            metrics.recordConflict(resolved != null);
+            if (resolved == null) {
+                OmniPackMod.LOGGER.debug("OmniPackMod: rejected conflicting write to slot {} by {} (base v{}, current v{}): {} -> {} over {}",
+                        slot, player, baseVersion, slotVersions[slot], base, requestedStack, sharedInventory.get(slot));
+                // re-broadcast the slot so the requester's inventory (or server) is put back in line
+                changedSharedSlots |= 1L << slot;
+                if (replicationRole == ReplicationRole.PRIMARY) replicationChanged |= 1L << slot;
+                ServerPlayer requester = member(player);
+                if (requester != null) {
+                    undoRejectedWrite(requester, slot, base, requestedStack);
+                } else if (replicationRole == ReplicationRole.PRIMARY) {
+                    // most likely a replica's write: its server undoes the move, see drainReplicationRejections
+                    replicationRejections.add(new RejectedWrite(player, slot, requestedStack, base, baseVersion));
+                }
+                return;
             }
         }
 
-        sharedInventory.set(slot, requestedStack.copy());
+        commitSlot(slot, resolved.copy(), TransactionJournal.PLAYER_WRITE, player, timestamp);
+        metrics.recordApplied();
+    }
+
+    private boolean isConcurrentWrite(int slot, UUID player, long baseVersion) {
+        if (baseVersion == slotVersions[slot]) return false;
+        return !(player.equals(lastWriter[slot]) && baseVersion >= writerRunBaseVersion[slot]);
+    }
+
+    /**
+     * Three-way merge of a stale write: re-applies the requester's count delta (requested - base)
+     * on top of the current stack. Only defined when all three are the same item and components
+     * (or empty) and the result fits in one stack; returns null otherwise.
+     */
+    private static ItemStack mergeConcurrentWrite(ItemStack current, ItemStack base, ItemStack requested) {
+        ItemStack kind = !requested.isEmpty() ? requested : !base.isEmpty() ? base : current;
+        if (kind.isEmpty()) return ItemStack.EMPTY;
+        if (!isEmptyOrSameKind(current, kind) || !isEmptyOrSameKind(base, kind) || !isEmptyOrSameKind(requested, kind)) {
+            return null;
+        }
+
+        int count = current.getCount() + requested.getCount() - base.getCount();
+        if (count < 0 || count > kind.getMaxStackSize()) return null;
+        return count == 0 ? ItemStack.EMPTY : kind.copyWithCount(count);
+    }
+
+    private static boolean isEmptyOrSameKind(ItemStack stack, ItemStack kind) {
+        return stack.isEmpty() || ItemStack.isSameItemSameComponents(stack, kind);
+    }
+
+    /**
+     * The requester's slot went from {@code base} to {@code requested}, but the write lost to a
+     * concurrent one and the shared slot keeps its current stack. The other half of the move
+     * already happened in the requester's menu, so it is undone there: whatever left the slot is
+     * taken back (cursor first, then the open container, then the requester's other slots) and
+     * whatever was put into it is handed back (cursor, else inventory, else dropped). Without
+     * this, both players would end up with the same items. The slot itself is reset right away.
+     */
+    private void undoRejectedWrite(ServerPlayer player, int slot, ItemStack base, ItemStack requested) {
+        boolean sameKind = !base.isEmpty() && !requested.isEmpty() && ItemStack.isSameItemSameComponents(base, requested);
+        int takenCount = sameKind ? base.getCount() - requested.getCount() : base.getCount();
+        int givenCount = sameKind ? requested.getCount() - base.getCount() : requested.getCount();
+
+        if (takenCount > 0) {
+            int missing = reclaim(player, slot, base, takenCount);
+            if (missing > 0) {
+                // nothing of that kind is left on the requester, e.g. it was dropped into the world
+                OmniPackMod.LOGGER.warn("OmniPackMod: could not take back {} x {} from {} after a rejected write to slot {}",
+                        missing, base.getItem(), player.getName().getString(), slot);
+            }
+        }
+        if (givenCount > 0) {
+            giveBack(player, requested.copyWithCount(givenCount));
+        }
+
+        PlayerSnapshot snapshot = lastSnapshotPerPlayer.get(player.getUUID());
+        if (snapshot != null) {
+            snapshot.rebase(currentSnapshot(), applySharedSlotsToMember(player, snapshot, 1L << slot));
+        }
+    }
+
+    /**
+     * Removes up to {@code count} of {@code kind} from what the player holds outside shared slot
+     * {@code skipSlot}. Returns how many could not be found.
+     */
+    private static int reclaim(ServerPlayer player, int skipSlot, ItemStack kind, int count) {
+        AbstractContainerMenu menu = player.containerMenu;
+        ItemStack carried = menu.getCarried();
+        if (ItemStack.isSameItemSameComponents(carried, kind)) {
+            int taken = Math.min(count, carried.getCount());
+            menu.setCarried(carried.getCount() == taken ? ItemStack.EMPTY : carried.copyWithCount(carried.getCount() - taken));
+            count -= taken;
+        }
+
+        Inventory inv = player.getInventory();
+        for (int i = 0; i < menu.slots.size() && count > 0; i++) {
+            Slot menuSlot = menu.slots.get(i);
+            // crafting/stonecutter results are previews, not items anyone owns yet
+            if (menuSlot.container == inv || menuSlot.container instanceof ResultContainer) continue;
+            ItemStack stack = menuSlot.getItem();
+            if (ItemStack.isSameItemSameComponents(stack, kind)) {
+                count -= menuSlot.remove(Math.min(count, stack.getCount())).getCount();
+                menuSlot.setChanged();
+            }
+        }
+
+        // the requester's other shared slots; detection commits the removal like any edit
+        int size = Math.min(SHARED_SLOT_COUNT, inv.getContainerSize());
+        for (int i = 0; i < size && count > 0; i++) {
+            ItemStack stack = inv.getItem(i);
+            if (i != skipSlot && ItemStack.isSameItemSameComponents(stack, kind)) {
+                count -= inv.removeItem(i, Math.min(count, stack.getCount())).getCount();
+            }
+        }
+        return count;
+    }
+
+    private static void giveBack(ServerPlayer player, ItemStack stack) {
+        AbstractContainerMenu menu = player.containerMenu;
+        ItemStack carried = menu.getCarried();
+        if (carried.isEmpty()) {
+            menu.setCarried(stack);
+            return;
+        }
+        if (ItemStack.isSameItemSameComponents(carried, stack)) {
+            int room = Math.min(stack.getCount(), carried.getMaxStackSize() - carried.getCount());
+            if (room > 0) {
+                menu.setCarried(carried.copyWithCount(carried.getCount() + room));
+                stack.shrink(room);
+            }
+        }
+        if (!stack.isEmpty()) {
+            // lands in a shared slot (and is committed by detection) or at the player's feet
+            player.getInventory().placeItemBackInInventory(stack);
+        }
+    }
+
+    @Nullable
+    private ServerPlayer member(UUID id) {
+        for (ServerPlayer p : members) {
+            if (p.getUUID().equals(id)) return p;
+        }
+        return null;
+    }
+
+    /**
+     * The single place a shared slot is written: bumps the version, marks it for broadcast
+     * and persistence, and journals it.
+     */
+    private void commitSlot(int slot, ItemStack stack, byte journalKind, UUID actor, long timestamp) {
+        if (journalKind != TransactionJournal.REPLICATED) {
+            recordForReplication(slot, stack, actor, timestamp);
+        }
+        sharedInventory.set(slot, stack);
+        sharedFingerprints[slot] = StackFingerprint.of(stack);
+        slotIndex.set(slot, stack);
+        if (!actor.equals(lastWriter[slot])) {
+            lastWriter[slot] = actor;
+            writerRunBaseVersion[slot] = slotVersions[slot];
+        }
+        slotVersions[slot]++;
+        commitCount++;
+        changedSharedSlots |= 1L << slot;
+        persistDirty = true;
+        if (journal != null) {
+            journal.append(journalKind, actor, slot, stack, timestamp);
+        }
+    }
+
+    /**
+     * Server-side insertion straight into the shared slots, the way Inventory.add fills a player
+     * inventory: first stacks of the same item with room (offhand, then main), then empty main
+     * slots. Armor slots are never filled. Every touched slot goes through commitSlot, so it is
+     * versioned, journaled and broadcast with the next pass.
+     * Returns what did not fit; {@code stack} itself is not modified.
+     */
+    public ItemStack insertShared(ItemStack stack, UUID actor) {
+        if (stack.isEmpty()) return ItemStack.EMPTY;
+        long now = System.currentTimeMillis();
+        int remaining = stack.getCount();
+        int maxSize = stack.getMaxStackSize();
+
+        if (slotIndex.nextPartialSlot(stack, OFFHAND_SLOT) == OFFHAND_SLOT) {
+            remaining = mergeInto(OFFHAND_SLOT, stack, remaining, maxSize, actor, now);
+        }
+        for (int slot = slotIndex.nextPartialSlot(stack, 0); remaining > 0 && slot >= 0 && slot < MAIN_SLOT_COUNT;
+             slot = slotIndex.nextPartialSlot(stack, slot + 1)) {
+            remaining = mergeInto(slot, stack, remaining, maxSize, actor, now);
+        }
+        for (int slot = slotIndex.nextEmptySlot(0); remaining > 0 && slot >= 0 && slot < MAIN_SLOT_COUNT;
+             slot = slotIndex.nextEmptySlot(slot + 1)) {
+            int moved = Math.min(remaining, maxSize);
+            commitSlot(slot, stack.copyWithCount(moved), TransactionJournal.PLAYER_WRITE, actor, now);
+            remaining -= moved;
+        }
+        return remaining > 0 ? stack.copyWithCount(remaining) : ItemStack.EMPTY;
+    }
+
+    /**
+     * Item pickup straight into the shared slots instead of the player's own inventory, so a
+     * pickup becomes one targeted delta in the next broadcast rather than a diff to detect.
+     * Whatever does not fit stays on the ground. Returns false if nothing could be picked up.
+     *
+     * ItemEntityPickupEvent.Pre fires before vanilla's own checks, so they are repeated here:
+     * no pickup while the entity's pickup delay runs, and an item targeted at one player (a
+     * /give overflow, a thrown item) is only picked up by that player.
+     */
+    public boolean pickUp(ServerPlayer player, ItemEntity entity) {
+        if (entity.hasPickUpDelay()) return false;
+        UUID target = entity.getTarget();
+        if (target != null && !target.equals(player.getUUID())) return false;
+
+        ItemStack stack = entity.getItem();
+        ItemStack remainder = insertShared(stack, player.getUUID());
+        int moved = stack.getCount() - remainder.getCount();
+        if (moved == 0) return false;
+
+        Item item = stack.getItem();
+        player.take(entity, moved);
+        if (remainder.isEmpty()) {
+            entity.discard();
+        } else {
+            entity.setItem(remainder);
+        }
+        player.awardStat(Stats.ITEM_PICKED_UP.get(item), moved);
+        player.onItemPickup(entity);
+        return true;
+    }
+
+    private int mergeInto(int slot, ItemStack stack, int remaining, int maxSize, UUID actor, long timestamp) {
+        ItemStack current = sharedInventory.get(slot);
+        int moved = Math.min(remaining, maxSize - current.getCount());
+        if (moved <= 0) return remaining;
+        commitSlot(slot, current.copyWithCount(current.getCount() + moved), TransactionJournal.PLAYER_WRITE, actor, timestamp);
+        return remaining - moved;
+    }
+
+    /**
+     * How many of exactly this item (and components) the shared slots hold.
+     */
+    public long countShared(ItemStack stack) {
+        return slotIndex.count(stack);
+    }
+
+    /**
+     * How many of this item, in any component variant, the shared slots hold.
+     */
+    public long countShared(Item item) {
+        return slotIndex.count(item);
+    }
+
+    public long getConflictingWrites() {
+        return metrics.conflictingWrites();
+    }
+
+    public SharedInventoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /* -------------------------
+       Replication
+       ------------------------- */
+
+    /**
+     * Receives the writes a replica collected for the primary, see drainReplicationOutbox.
+     */
+    public interface ReplicatedWriteConsumer {
+        void accept(UUID player, int slot, ItemStack requested, ItemStack base, long baseVersion);
+    }
+
+    public ReplicationRole getReplicationRole() {
+        return replicationRole;
+    }
+
+    private void recordForReplication(int slot, ItemStack stack, UUID actor, long timestamp) {
+        if (replicationRole == ReplicationRole.PRIMARY) {
+            replicationChanged |= 1L << slot;
+        } else if (replicationOutbox != null) {
+            // later writes to a slot already waiting only move its target: the primary merges
+            // the whole run as one edit from the first base, whoever made the later writes
+            UUID writer = replicationOutbox.isPending(slot) ? replicationOutbox.writer(slot) : actor;
+            replicationOutbox.put(slot, writer, stack, sharedInventory.get(slot), replicatedVersions[slot], timestamp);
+        }
+    }
+
+    /**
+     * Primary: identifies the version numbers in this server run's deltas.
+     */
+    public long getReplicationEpoch() {
+        return replicationEpoch;
+    }
+
+    /**
+     * Primary: slots to publish since the last call, with their current stack (getSharedStack)
+     * and version (getSlotVersion).
+     */
+    public long drainReplicationChanges() {
+        long mask = replicationChanged;
+        replicationChanged = 0L;
+        return mask;
+    }
+
+    /**
+     * The committed stack in a shared slot. Committed stacks are never mutated; do not modify it.
+     */
+    public ItemStack getSharedStack(int slot) {
+        return sharedInventory.get(slot);
+    }
+
+    /**
+     * Primary: a write made on a replica, based on the primary's {@code baseVersion} of the slot.
+     * Queued and applied like a local player's write, so a stale one is merged or rejected by
+     * the usual version check.
+     */
+    public void queueReplicatedWrite(UUID player, int slot, ItemStack requested, ItemStack base, long baseVersion) {
+        if (slot < 0 || slot >= SHARED_SLOT_COUNT) return;
+        queueWrite(player, slot, requested, base, baseVersion, System.currentTimeMillis());
+    }
+
+    private record RejectedWrite(UUID player, int slot, ItemStack requested, ItemStack base, long baseVersion) { }
+
+    /**
+     * Primary: number of writes rejected since the last drainReplicationRejections.
+     */
+    public int replicationRejectionCount() {
+        return replicationRejections.size();
+    }
+
+    /**
+     * Primary: hands every rejected write by a player who is not on this server to
+     * {@code consumer} and forgets it. Publish them after the deltas of the same pass, so a
+     * replica resets the slot before it undoes the move.
+     */
+    public void drainReplicationRejections(ReplicatedWriteConsumer consumer) {
+        for (RejectedWrite rejected : replicationRejections) {
+            consumer.accept(rejected.player(), rejected.slot(), rejected.requested(), rejected.base(), rejected.baseVersion());
+        }
+        replicationRejections.clear();
+    }
+
+    /**
+     * Replica: the primary rejected a write forwarded from here. If its writer is online in this
+     * group, the other half of the move is undone in their menu, as for a local rejection. The
+     * primary's delta for the slot has already put the slot itself back.
+     */
+    public void undoReplicatedWrite(UUID player, int slot, ItemStack requested, ItemStack base) {
+        if (slot < 0 || slot >= SHARED_SLOT_COUNT) return;
+        ServerPlayer requester = member(player);
+        if (requester != null) {
+            undoRejectedWrite(requester, slot, base, requested);
+        }
+    }
+
+    /**
+     * Replica: number of slots with a write waiting for the primary.
+     */
+    public int replicationOutboxSize() {
+        return replicationOutbox != null ? Long.bitCount(replicationOutbox.pendingMask()) : 0;
+    }
+
+    /**
+     * Replica: hands every waiting write to {@code consumer} and forgets it.
+     */
+    public void drainReplicationOutbox(ReplicatedWriteConsumer consumer) {
+        if (replicationOutbox == null) return;
+        long mask = replicationOutbox.pendingMask();
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            consumer.accept(replicationOutbox.writer(slot), slot, replicationOutbox.requested(slot),
+                    replicationOutbox.base(slot), replicationOutbox.baseVersion(slot));
+            replicationOutbox.remove(slot);
+        }
+    }
+
+    /**
+     * Replica: the epoch of the primary state applied last, 0 before the first snapshot.
+     */
+    public long getReplicatedEpoch() {
+        return replicatedEpoch;
+    }
+
+    /**
+     * Replica: the primary's full state. Replaces the epoch and every slot version; slots whose
+     * local write has not been sent yet keep it, the primary's answer to that write follows.
+     */
+    public void applyReplicatedSnapshot(long epoch, long[] versions, ItemStack[] stacks) {
+        replicatedEpoch = epoch;
+        Arrays.fill(replicatedVersions, 0L);
+        for (int slot = 0; slot < SHARED_SLOT_COUNT; slot++) {
+            applyReplicatedSlot(slot, versions[slot], stacks[slot]);
+        }
+    }
+
+    /**
+     * Replica: one slot of a primary delta. Deltas are ordered per slot by version, so one
+     * older than what this slot already has is dropped. Returns false if the delta belongs to
+     * an epoch this replica has no snapshot of; the caller should request one.
+     */
+    public boolean applyReplicatedDelta(long epoch, int slot, long version, ItemStack stack) {
+        if (epoch != replicatedEpoch) return false;
+        if (slot >= 0 && slot < SHARED_SLOT_COUNT) {
+            applyReplicatedSlot(slot, version, stack);
+        }
+        return true;
+    }
+
+    private void applyReplicatedSlot(int slot, long version, ItemStack stack) {
+        // equal versions are re-sends (e.g. after a rejected write) and are applied again
+        if (version < replicatedVersions[slot]) return;
+        replicatedVersions[slot] = version;
+        if (replicationOutbox != null && replicationOutbox.isPending(slot)) return;
+        if (StackFingerprint.matches(sharedInventory.get(slot), sharedFingerprints[slot], stack)) return;
+
+        commitSlot(slot, stack.copy(), TransactionJournal.REPLICATED, Util.NIL_UUID, System.currentTimeMillis());
     }
 
     /* -------------------------
        Sync helpers
        ------------------------- */
 
-    private void broadcastSharedInventoryToAll(MinecraftServer server) {
-        for (ServerPlayer p : server.getPlayerList().getPlayers()) {
-            applySharedToPlayerInventory(p);
-            sendFullInventoryToPlayer(p);
-            lastSnapshotPerPlayer.put(p.getUUID(), copySharedToArray());
+    private void broadcastChangedSlotsToAll(MinecraftServer server) {
+        long mask = changedSharedSlots;
+        changedSharedSlots = 0L;
+        long priorityMask = mask & PRIORITY_SLOTS;
+        Optional<Long> epoch = Optional.of(++syncEpoch);
+
+        // members receive one of at most two deltas (everything, or priority slots only);
+        // each is encoded once, on first use, and fanned out
+        SharedInventorySyncPayload full = null;
+        SharedInventorySyncPayload priority = null;
+        SharedSnapshot current = currentSnapshot();
+
+        for (ServerPlayer p : members) {
+            PlayerSnapshot snapshot = lastSnapshotPerPlayer.get(p.getUUID());
+            long applied;
+            if (snapshot == null) {
+                snapshot = new PlayerSnapshot(current);
+                lastSnapshotPerPlayer.put(p.getUUID(), snapshot);
+                applySharedSlotsToPlayerInventory(p, mask);
+                applied = mask;
+            } else {
+                // the server-side inventory always takes the whole delta: deaths, drops and
+                // container code read it, so only the packet may wait
+                applied = applySharedSlotsToMember(p, snapshot, mask);
+            }
+            snapshot.rebase(current, applied);
+
+            long sendMask = mask;
+            SharedInventorySyncPayload payload;
+            if (isInterested(p, snapshot)) {
+                if (full == null) full = SharedInventorySyncPayload.encodeOnce(epoch, collectSharedSlotUpdates(mask), server.registryAccess());
+                payload = full;
+            } else {
+                snapshot.deferredSlots |= mask & ~PRIORITY_SLOTS;
+                sendMask = priorityMask;
+                if (sendMask == 0L) continue;
+                if (priority == null) priority = SharedInventorySyncPayload.encodeOnce(epoch, collectSharedSlotUpdates(priorityMask), server.registryAccess());
+                payload = priority;
+            }
+
+            PacketDistributor.sendToPlayer(p, payload);
+            metrics.recordBroadcast(Long.bitCount(sendMask), payload.encodedSize());
         }
     }
 
+    private static boolean isInterested(ServerPlayer p, PlayerSnapshot snapshot) {
+        // any open container screen shows the player's inventory too
+        return !Config.INTEREST_SYNC.get() || snapshot.viewing || p.containerMenu != p.inventoryMenu;
+    }
+
+    /**
+     * Lazy catch-up: sends the deferred slots once the player starts looking (screen opened,
+     * hotbar slot switched). They are already in the server-side inventory, so this only sends.
+     * Cheap no-op for everyone else.
+     */
+    private void catchUpIfInterested(ServerPlayer p) {
+        PlayerSnapshot snapshot = lastSnapshotPerPlayer.get(p.getUUID());
+        if (snapshot == null) return;
+
+        int selected = p.getInventory().getSelectedSlot();
+        boolean selectionChanged = selected != snapshot.selectedSlot;
+        snapshot.selectedSlot = selected;
+
+        if (snapshot.deferredSlots != 0L && (selectionChanged || isInterested(p, snapshot))) {
+            long mask = snapshot.deferredSlots;
+            snapshot.deferredSlots = 0L;
+            sendSlotsToPlayer(p, mask, Optional.of(++syncEpoch));
+            metrics.recordBroadcast(Long.bitCount(mask), 0);
+        }
+    }
+
+    /**
+     * Coalesced sync for members that are not looking: everything deferred since the last flush.
+     * Members with the same deferred set share one encoded payload. Like catch-up, this only
+     * sends; the broadcast already applied the slots server-side.
+     */
+    private void flushDeferredSlots(MinecraftServer server) {
+        Map<Long, SharedInventorySyncPayload> byMask = null;
+        Optional<Long> epoch = Optional.empty();
+
+        for (ServerPlayer p : members) {
+            PlayerSnapshot snapshot = lastSnapshotPerPlayer.get(p.getUUID());
+            if (snapshot == null || snapshot.deferredSlots == 0L) continue;
+
+            long mask = snapshot.deferredSlots;
+            snapshot.deferredSlots = 0L;
+            if (byMask == null) {
+                byMask = new HashMap<>();
+                epoch = Optional.of(++syncEpoch);
+            }
+            Optional<Long> flushEpoch = epoch;
+            SharedInventorySyncPayload payload = byMask.computeIfAbsent(mask,
+                    m -> SharedInventorySyncPayload.encodeOnce(flushEpoch, collectSharedSlotUpdates(m), server.registryAccess()));
+
+            PacketDistributor.sendToPlayer(p, payload);
+            metrics.recordBroadcast(Long.bitCount(mask), payload.encodedSize());
+        }
+    }
+
+    /**
+     * Applies the slots written since the last broadcast to every member's server-side inventory
+     * without sending anything; the broadcast still carries them to the clients.
+     */
+    private void refreshMemberCopies() {
+        if (changedSharedSlots == 0L) return;
+        SharedSnapshot current = currentSnapshot();
+        for (ServerPlayer p : members) {
+            PlayerSnapshot snapshot = lastSnapshotPerPlayer.get(p.getUUID());
+            if (snapshot == null) continue;
+            snapshot.rebase(current, applySharedSlotsToMember(p, snapshot, changedSharedSlots));
+        }
+    }
+
+    /**
+     * applySharedSlotsToPlayerInventory for a member with a snapshot, skipping every slot the
+     * player has changed since the server last looked at it. Overwriting such a slot would lose the
+     * edit; left alone, detection picks it up with its old base version and the version check
+     * merges or rejects it. Returns the slots written.
+     */
+    private long applySharedSlotsToMember(ServerPlayer p, PlayerSnapshot snapshot, long slotMask) {
+        Inventory inv = p.getInventory();
+        long current = 0L;
+        long mask = slotMask;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            if (slot < inv.getContainerSize() && StackFingerprint.matches(snapshot.stack(slot), snapshot.fingerprint(slot), inv.getItem(slot))) {
+                current |= 1L << slot;
+            }
+        }
+        return applySharedSlotsToPlayerInventory(p, current);
+    }
+
+    List<SharedInventorySyncPayload.SlotUpdate> collectSharedSlotUpdates(long slotMask) {
+        List<SharedInventorySyncPayload.SlotUpdate> updates = new ArrayList<>(Long.bitCount(slotMask));
+        long mask = slotMask;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            updates.add(new SharedInventorySyncPayload.SlotUpdate(slot, sharedInventory.get(slot).copy()));
+        }
+        return updates;
+    }
+
+    /**
+     * Overwrites the given slots of the player's server-side inventory with the shared stacks.
+     * Dirty bits the player's own edits set on other slots survive, so detection still sees
+     * them. Returns {@code slotMask}.
+     */
+    private long applySharedSlotsToPlayerInventory(ServerPlayer p, long slotMask) {
+        if (slotMask == 0L) return 0L;
+        Inventory inv = p.getInventory();
+        DirtySlotTracker tracker = (DirtySlotTracker) inv;
+        long undetected = tracker.omnipack$consumeDirtyMask() & ~slotMask;
+        int size = Math.min(SHARED_SLOT_COUNT, inv.getContainerSize());
+
+        long mask = slotMask;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            if (slot < size) {
+                inv.setItem(slot, sharedInventory.get(slot).copy());
+            }
+        }
+
+        inv.setChanged();
+        tracker.omnipack$consumeDirtyMask();
+        while (undetected != 0L) {
+            tracker.omnipack$markSlotDirty(Long.numberOfTrailingZeros(undetected));
+            undetected &= undetected - 1L;
+        }
+        markSentInMenus(p, slotMask);
+        return slotMask;
+    }
+
     private void applySharedToPlayerInventory(ServerPlayer p) {
         Inventory inv = p.getInventory(); // net.minecraft.world.entity.player.Inventory
 
@@ -165,16 +1249,56 @@ public class SharedInventoryManager {
         }
 
         inv.setChanged();
+
+        // our own writes are not player edits; drop the bits they just set
+        ((DirtySlotTracker) inv).omnipack$consumeDirtyMask();
+        markSentInMenus(p, DirtySlotTracker.ALL_SLOTS);
+    }
+
+    /**
+     * Records the given shared slots as already synced in the player's open menu (and the
+     * inventory menu behind it), so the next broadcastChanges does not send them again as
+     * vanilla ClientboundContainerSetSlot packets. SharedInventorySyncPayload carries them instead.
+     */
+    private static void markSentInMenus(ServerPlayer p, long slotMask) {
+        markSent(p.containerMenu, p.getInventory(), slotMask);
+        if (p.containerMenu != p.inventoryMenu) {
+            markSent(p.inventoryMenu, p.getInventory(), slotMask);
+        }
+    }
+
+    private static void markSent(AbstractContainerMenu menu, Inventory inv, long slotMask) {
+        for (int i = 0; i < menu.slots.size(); i++) {
+            Slot slot = menu.slots.get(i);
+            int index = slot.getContainerSlot();
+            if (slot.container == inv && index < SHARED_SLOT_COUNT && (slotMask & (1L << index)) != 0L) {
+                menu.setRemoteSlot(i, inv.getItem(index));
+            }
+        }
     }
 
     private void sendFullInventoryToPlayer(ServerPlayer p) {
+        sendSlotsToPlayer(p, DirtySlotTracker.ALL_SLOTS, Optional.empty());
+    }
+
+    /**
+     * Sends all slots in the mask as one batched payload instead of one vanilla packet per slot.
+     */
+    private void sendSlotsToPlayer(ServerPlayer p, long slotMask, Optional<Long> epoch) {
         Inventory inv = p.getInventory();
         int size = Math.min(SHARED_SLOT_COUNT, inv.getContainerSize());
 
-        for (int slot = 0; slot < size; slot++) {
-            ItemStack stack = inv.getItem(slot);
-            net.minecraft.network.protocol.game.ClientboundSetPlayerInventoryPacket pkt = new net.minecraft.network.protocol.game.ClientboundSetPlayerInventoryPacket(slot, stack);
-            p.connection.send(pkt);
+        List<SharedInventorySyncPayload.SlotUpdate> updates = new ArrayList<>(Long.bitCount(slotMask));
+        long mask = slotMask;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            if (slot >= size) break;
+            updates.add(new SharedInventorySyncPayload.SlotUpdate(slot, inv.getItem(slot).copy()));
+        }
+
+        if (!updates.isEmpty()) {
+            PacketDistributor.sendToPlayer(p, new SharedInventorySyncPayload(epoch, updates));
         }
     }
 
@@ -182,41 +1306,139 @@ public class SharedInventoryManager {
        Snapshots & utils
        ------------------------- */
 
-    private ItemStack[] takePlayerInventorySnapshot(ServerPlayer p) {
-        Inventory inv = p.getInventory();
+    /**
+     * The shared state as an immutable snapshot. Republished at most once per commit, however
+     * many members rebase onto it.
+     */
+    SharedSnapshot currentSnapshot() {
+        if (publishedSnapshot == null || publishedSnapshot.epoch != commitCount) {
+            publishedSnapshot = new SharedSnapshot(commitCount, sharedInventory.toArray(new ItemStack[0]),
+                    slotVersions.clone(), sharedFingerprints.clone());
+        }
+        return publishedSnapshot;
+    }
+
+    /**
+     * Baseline for a player seen without one: the current shared state, with the player's
+     * differing slots recorded as diverged at the current version (they are not treated as edits).
+     */
+    private PlayerSnapshot baselineOf(Container inv) {
+        SharedSnapshot current = currentSnapshot();
+        PlayerSnapshot snapshot = new PlayerSnapshot(current);
         int size = Math.min(SHARED_SLOT_COUNT, inv.getContainerSize());
-        ItemStack[] snap = new ItemStack[SHARED_SLOT_COUNT];
         for (int slot = 0; slot < SHARED_SLOT_COUNT; slot++) {
-            if (slot < size) {
-                ItemStack s = inv.getItem(slot);
-                snap[slot] = (s == null) ? ItemStack.EMPTY : s.copy();
-            } else {
-                snap[slot] = ItemStack.EMPTY;
+            ItemStack s = slot < size ? inv.getItem(slot) : ItemStack.EMPTY;
+            int fingerprint = StackFingerprint.of(s);
+            if (fingerprint != current.fingerprints[slot] || !ItemStack.matches(current.stacks[slot], s)) {
+                snapshot.diverge(slot, s.copy(), current.versions[slot], fingerprint);
             }
         }
-        return snap;
-    }
-
-    private ItemStack[] copySharedToArray() {
-        ItemStack[] arr = new ItemStack[SHARED_SLOT_COUNT];
-        for (int i = 0; i < SHARED_SLOT_COUNT; i++) arr[i] = sharedInventory.get(i).copy();
-        return arr;
+        return snapshot;
     }
 
     /* -------------------------
-       Helper: change request
+       Helper: copy-on-write snapshots
        ------------------------- */
-    private static class SlotChangeRequest {
-        public final UUID player;
-        public final int slotIndex;
-        public final ItemStack item;
-        public final long timestamp;
-
-        public SlotChangeRequest(UUID player, int slotIndex, ItemStack item, long timestamp) {
-            this.player = player;
-            this.slotIndex = slotIndex;
-            this.item = item;
-            this.timestamp = timestamp;
+
+    /**
+     * Immutable shared state at one commit count. Holds the very ItemStack instances of
+     * sharedInventory: committed stacks are never mutated (every write commits a fresh stack),
+     * so publishing costs three array clones rather than 41 stack copies.
+     */
+    static final class SharedSnapshot {
+        final long epoch;
+        final ItemStack[] stacks;
+        final long[] versions;
+        final int[] fingerprints;
+
+        SharedSnapshot(long epoch, ItemStack[] stacks, long[] versions, int[] fingerprints) {
+            this.epoch = epoch;
+            this.stacks = stacks;
+            this.versions = versions;
+            this.fingerprints = fingerprints;
+        }
+
+        long slotsChangedBy(SharedSnapshot newer) {
+            long changed = 0L;
+            for (int slot = 0; slot < SHARED_SLOT_COUNT; slot++) {
+                if (versions[slot] != newer.versions[slot]) changed |= 1L << slot;
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * What the server last saw (or sent) in one player's inventory: a shared base snapshot plus
+     * entries for the slots where the player's inventory differs from it.
+     */
+    private static final class PlayerSnapshot {
+        SharedSnapshot base;
+        // slots whose entry below overrides base
+        long divergedSlots;
+        // allocated on first divergence; entries outside divergedSlots are stale
+        ItemStack[] divergedStacks;
+        // shared slot version each diverged entry was based on
+        long[] divergedVersions;
+        int[] divergedFingerprints;
+        // changed shared slots applied to this player's inventory but not yet sent to its client
+        // (see isInterested)
+        long deferredSlots;
+        boolean viewing;
+        int selectedSlot = -1;
+
+        PlayerSnapshot(SharedSnapshot base) {
+            this.base = base;
+        }
+
+        boolean isDiverged(int slot) {
+            return (divergedSlots & (1L << slot)) != 0L;
+        }
+
+        ItemStack stack(int slot) {
+            return isDiverged(slot) ? divergedStacks[slot] : base.stacks[slot];
+        }
+
+        long version(int slot) {
+            return isDiverged(slot) ? divergedVersions[slot] : base.versions[slot];
+        }
+
+        int fingerprint(int slot) {
+            return isDiverged(slot) ? divergedFingerprints[slot] : base.fingerprints[slot];
+        }
+
+        void diverge(int slot, ItemStack stack, long version, int fingerprint) {
+            if (divergedStacks == null) {
+                divergedStacks = new ItemStack[SHARED_SLOT_COUNT];
+                divergedVersions = new long[SHARED_SLOT_COUNT];
+                divergedFingerprints = new int[SHARED_SLOT_COUNT];
+            }
+            divergedStacks[slot] = stack;
+            divergedVersions[slot] = version;
+            divergedFingerprints[slot] = fingerprint;
+            divergedSlots |= 1L << slot;
+        }
+
+        /**
+         * The player was just sent {@code appliedSlots} from {@code next}. Those slots converge;
+         * any other slot that changed between the old and new base was not sent, so it keeps the
+         * old base's entry as a divergence (a reference, not a copy).
+         */
+        void rebase(SharedSnapshot next, long appliedSlots) {
+            divergedSlots &= ~appliedSlots;
+            if (next != base) {
+                long stale = base.slotsChangedBy(next) & ~appliedSlots & ~divergedSlots;
+                while (stale != 0L) {
+                    int slot = Long.numberOfTrailingZeros(stale);
+                    stale &= stale - 1L;
+                    diverge(slot, base.stacks[slot], base.versions[slot], base.fingerprints[slot]);
+                }
+                base = next;
+            }
+            if (divergedSlots == 0L) {
+                divergedStacks = null;
+                divergedVersions = null;
+                divergedFingerprints = null;
+            }
         }
     }
 }
\ No newline at end of file
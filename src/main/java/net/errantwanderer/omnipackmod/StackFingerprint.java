@@ -0,0 +1,31 @@
+package net.errantwanderer.omnipackmod;
+
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * 32-bit fingerprint of a stack's item, count and data components.
+ *
+ * - Different fingerprints mean different stacks; equal fingerprints still need
+ *   ItemStack.matches to confirm, since hashes can collide
+ * - Cheap to recompute: the component hash is cached per stack (PatchedDataComponentMapMixin)
+ * - Stored next to every kept stack (shared slots, player snapshots) and updated whenever the
+ *   stack is replaced, so comparing two stored stacks is an int compare
+ */
+public final class StackFingerprint {
+    public static final int EMPTY = 0;
+
+    private StackFingerprint() { }
+
+    public static int of(ItemStack stack) {
+        if (stack.isEmpty()) return EMPTY;
+        int hash = 31 * ItemStack.hashItemAndComponents(stack) + stack.getCount();
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    /**
+     * ItemStack.matches with an integer fast path; {@code fingerprintA} must be of(a).
+     */
+    public static boolean matches(ItemStack a, int fingerprintA, ItemStack b) {
+        return fingerprintA == of(b) && ItemStack.matches(a, b);
+    }
+}
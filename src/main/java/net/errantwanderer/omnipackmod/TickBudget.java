@@ -0,0 +1,89 @@
+package net.errantwanderer.omnipackmod;
+
+/**
+ * Wall-clock budget for the mod's work in one server tick.
+ *
+ * - begin() starts the clock; exhausted() is a single nanoTime read and is meant to be checked
+ *   between units of work (one player, one slot), never inside them
+ * - A budget of 0 means unlimited
+ * - end() records the tick; time spent past the budget is an overrun. Overruns are counted
+ *   and logged at most once every OVERRUN_LOG_INTERVAL_MS
+ *
+ * Server thread only.
+ */
+public final class TickBudget {
+    private static final long OVERRUN_LOG_INTERVAL_MS = 10_000L;
+
+    private long startNanos;
+    private long deadlineNanos;
+    private long budgetNanos;
+    private boolean deferredWork;
+
+    private long ticks;
+    private long overrunTicks;
+    private long deferredTicks;
+    private long worstOverrunNanos;
+    private long overrunsSinceLog;
+    private long lastOverrunLogMs;
+    private String lastPhase = "";
+
+    public void begin(long budgetMicros) {
+        startNanos = System.nanoTime();
+        budgetNanos = budgetMicros * 1_000L;
+        deadlineNanos = budgetMicros > 0 ? startNanos + budgetNanos : Long.MAX_VALUE;
+        deferredWork = false;
+    }
+
+    public boolean exhausted() {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0L;
+    }
+
+    /**
+     * Notes that work was left for the next tick, and which phase it was in.
+     */
+    public void deferRemaining(String phase) {
+        deferredWork = true;
+        lastPhase = phase;
+    }
+
+    public void end() {
+        long elapsed = System.nanoTime() - startNanos;
+        ticks++;
+        if (deferredWork) deferredTicks++;
+        if (budgetNanos <= 0L || elapsed <= budgetNanos) return;
+
+        long over = elapsed - budgetNanos;
+        overrunTicks++;
+        overrunsSinceLog++;
+        worstOverrunNanos = Math.max(worstOverrunNanos, over);
+
+        long now = System.currentTimeMillis();
+        if (now - lastOverrunLogMs >= OVERRUN_LOG_INTERVAL_MS) {
+            OmniPackMod.LOGGER.warn("OmniPackMod: shared inventory work exceeded its {}us tick budget {} time(s) recently"
+                            + " (last: {}us over, worst: {}us over, last deferred phase: {})",
+                    budgetNanos / 1_000L, overrunsSinceLog, over / 1_000L, worstOverrunNanos / 1_000L,
+                    lastPhase.isEmpty() ? "none" : lastPhase);
+            overrunsSinceLog = 0L;
+            lastOverrunLogMs = now;
+        }
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getOverrunTicks() {
+        return overrunTicks;
+    }
+
+    /**
+     * Ticks that left at least one phase unfinished for the next tick.
+     */
+    public long getDeferredTicks() {
+        return deferredTicks;
+    }
+
+    public long getWorstOverrunNanos() {
+        return worstOverrunNanos;
+    }
+}
@@ -0,0 +1,183 @@
+package net.errantwanderer.omnipackmod.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.UUID;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+
+/**
+ * In-memory trace of click handling, replacing per-action INFO logging on the hot path.
+ *
+ * - A fixed ring of CAPACITY events kept as parallel primitive arrays; record() writes one slot
+ *   and never allocates or formats anything
+ * - The newest CAPACITY events survive, older ones are overwritten
+ * - Toggled and sampled at runtime (enabled, sampleEvery); both start from traceEnabled and
+ *   traceSampleEvery and can be changed by /omnipack trace without touching the config file
+ * - Nothing is written to disk until /omnipack trace dump asks for it: snapshot() copies the
+ *   newest events on the recording thread, write() formats them on the IO pool
+ *
+ * Two rings: SERVER (written on the server thread) and CLIENT (written on the client thread).
+ * Each has a single writer; a snapshot of the other side's ring taken in singleplayer is best
+ * effort and may include one torn event.
+ */
+public final class ActionTrace {
+    public static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+
+    public static final ActionTrace SERVER = new ActionTrace("server");
+    public static final ActionTrace CLIENT = new ActionTrace("client");
+
+    /**
+     * What an event's slot, sequence and arg mean depends on its kind:
+     * - ACTION_RECEIVED: a click arrived; arg = button << 8 | click type ordinal
+     * - ACTION_REFUSED: the rate limiter refused it
+     * - ACTION_APPLIED / ACTION_FAILED: the vanilla click handler ran, or failed
+     * - INVALID_SLOT: the click named a slot the open menu does not have
+     * - GESTURE_RECEIVED: a compound gesture arrived; slot = its first slot, arg = steps
+     * - ACTIONS_PROCESSED: the shared inventory took one batch's diff; arg = actions, slot = 1 on failure
+     * - RESPONSE_RECEIVED (client): a SlotActionResponse arrived; arg = changed slots, or -1 if refused
+     */
+    public enum Kind { ACTION_RECEIVED, ACTION_REFUSED, ACTION_APPLIED, ACTION_FAILED, INVALID_SLOT,
+        GESTURE_RECEIVED, ACTIONS_PROCESSED, RESPONSE_RECEIVED }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final String side;
+    private final long[] nanos = new long[CAPACITY];
+    private final long[] playerMost = new long[CAPACITY];
+    private final long[] playerLeast = new long[CAPACITY];
+    private final byte[] kinds = new byte[CAPACITY];
+    private final int[] slots = new int[CAPACITY];
+    private final int[] sequences = new int[CAPACITY];
+    private final int[] args = new int[CAPACITY];
+    // events written so far; the next one goes to written & MASK
+    private long written = 0L;
+    private long seen = 0L;
+
+    private volatile boolean enabled = true;
+    private volatile int sampleEvery = 1;
+
+    private ActionTrace(String side) {
+        this.side = side;
+    }
+
+    public void configure(boolean enabled, int sampleEvery) {
+        this.enabled = enabled;
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public long getRecorded() {
+        return written;
+    }
+
+    /**
+     * Records one event, or nothing if tracing is off or the event is sampled out.
+     * {@code player} may be null (client side).
+     */
+    public void record(Kind kind, UUID player, int slot, int sequence, int arg) {
+        if (!enabled) return;
+        int every = sampleEvery;
+        if (every > 1 && seen++ % every != 0) return;
+
+        int i = (int) (written & MASK);
+        nanos[i] = System.nanoTime();
+        playerMost[i] = player != null ? player.getMostSignificantBits() : 0L;
+        playerLeast[i] = player != null ? player.getLeastSignificantBits() : 0L;
+        kinds[i] = (byte) kind.ordinal();
+        slots[i] = slot;
+        sequences[i] = sequence;
+        args[i] = arg;
+        written++;
+    }
+
+    /**
+     * Copies the newest {@code count} events (at most CAPACITY), oldest first.
+     */
+    public Snapshot snapshot(int count) {
+        long end = written;
+        int n = (int) Math.min(Math.min(count, CAPACITY), end);
+        Snapshot snapshot = new Snapshot(side, n, System.nanoTime());
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((end - n + k) & MASK);
+            snapshot.nanos[k] = nanos[i];
+            snapshot.playerMost[k] = playerMost[i];
+            snapshot.playerLeast[k] = playerLeast[i];
+            snapshot.kinds[k] = kinds[i];
+            snapshot.slots[k] = slots[i];
+            snapshot.sequences[k] = sequences[i];
+            snapshot.args[k] = args[i];
+        }
+        return snapshot;
+    }
+
+    /**
+     * A copy of part of a ring, safe to format and write on any thread.
+     */
+    public static final class Snapshot {
+        private final String side;
+        private final long takenNanos;
+        private final long[] nanos;
+        private final long[] playerMost;
+        private final long[] playerLeast;
+        private final byte[] kinds;
+        private final int[] slots;
+        private final int[] sequences;
+        private final int[] args;
+
+        private Snapshot(String side, int size, long takenNanos) {
+            this.side = side;
+            this.takenNanos = takenNanos;
+            this.nanos = new long[size];
+            this.playerMost = new long[size];
+            this.playerLeast = new long[size];
+            this.kinds = new byte[size];
+            this.slots = new int[size];
+            this.sequences = new int[size];
+            this.args = new int[size];
+        }
+
+        public int size() {
+            return nanos.length;
+        }
+
+        /**
+         * One line per event: milliseconds before the snapshot, side, kind, player, slot,
+         * sequence and arg.
+         */
+        public void appendTo(StringBuilder out) {
+            for (int k = 0; k < nanos.length; k++) {
+                out.append(String.format(Locale.ROOT, "-%.3fms %s %s player=%s slot=%d seq=%d arg=%d%n",
+                        (takenNanos - nanos[k]) / 1e6, side, KINDS[kinds[k]],
+                        playerMost[k] == 0L && playerLeast[k] == 0L ? "-" : new UUID(playerMost[k], playerLeast[k]),
+                        slots[k], sequences[k], args[k]));
+            }
+        }
+    }
+
+    /**
+     * Writes the given snapshots to {@code file}. Failures are logged, not thrown.
+     */
+    public static void write(Path file, Snapshot... snapshots) {
+        StringBuilder out = new StringBuilder();
+        for (Snapshot snapshot : snapshots) {
+            snapshot.appendTo(out);
+        }
+        try {
+            Files.writeString(file, out, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] failed to write trace to {}: {}", file, e.getMessage());
+        }
+    }
+}
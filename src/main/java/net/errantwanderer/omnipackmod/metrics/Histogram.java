@@ -0,0 +1,67 @@
+package net.errantwanderer.omnipackmod.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log2 histogram of non-negative longs (nanoseconds, counts, ...).
+ *
+ * - record() is a few arithmetic ops and one array increment, no allocation
+ * - Percentiles are reported as the upper bound of their power-of-two bucket, so they are
+ *   within a factor of two; count, total and max are exact
+ * - Synchronized, because persistence latencies are recorded on writer threads; uncontended on
+ *   the server thread
+ */
+public final class Histogram {
+    private final long[] buckets = new long[65];
+    private long count;
+    private long total;
+    private long max;
+
+    public synchronized void record(long value) {
+        long v = Math.max(0L, value);
+        buckets[64 - Long.numberOfLeadingZeros(v)]++;
+        count++;
+        total += v;
+        if (v > max) max = v;
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized long max() {
+        return max;
+    }
+
+    public synchronized double mean() {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /**
+     * Upper bound of the bucket holding the {@code quantile} (0..1) value, capped at max().
+     */
+    public synchronized long percentile(double quantile) {
+        if (count == 0) return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0L;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                long upper = bucket == 0 ? 0L : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1L;
+                return Math.min(upper, max);
+            }
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0L);
+        count = 0L;
+        total = 0L;
+        max = 0L;
+    }
+}
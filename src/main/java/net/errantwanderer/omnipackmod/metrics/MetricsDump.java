@@ -0,0 +1,74 @@
+package net.errantwanderer.omnipackmod.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+
+/**
+ * Appends one row per group to omnipack-metrics.csv or omnipack-metrics.jsonl in the server
+ * directory, for graphing a long run. Values are cumulative, like SharedInventoryMetrics;
+ * consecutive rows give per-interval rates.
+ */
+public final class MetricsDump {
+    public enum Format { CSV, JSON }
+
+    private static final String CSV_HEADER = "timestamp,group,members,scans,scan_p50_us,scan_p99_us,scan_max_us,"
+            + "queue_depth_p99,queue_depth_max,applied_writes,conflicting_writes,rejected_writes,slots_broadcast,"
+            + "bytes_broadcast,requests,snapshot_writes,snapshot_write_p99_us,journal_flushes,journal_flush_p99_us\n";
+
+    private MetricsDump() { }
+
+    public static Path fileFor(Path serverDirectory, Format format) {
+        return serverDirectory.resolve(format == Format.CSV ? "omnipack-metrics.csv" : "omnipack-metrics.jsonl");
+    }
+
+    /**
+     * One group's row. Call once per group per dump, then write() the collected rows.
+     */
+    public static String row(Format format, Instant timestamp, String group, int members, SharedInventoryMetrics m) {
+        Histogram scan = m.scanNanos();
+        Histogram depth = m.queueDepth();
+        Histogram snapshot = m.snapshotWriteNanos();
+        Histogram journal = m.journalFlushNanos();
+        if (format == Format.CSV) {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d%n",
+                    timestamp, group, members, scan.count(), micros(scan.percentile(0.50)), micros(scan.percentile(0.99)),
+                    micros(scan.max()), depth.percentile(0.99), depth.max(), m.appliedWrites(), m.conflictingWrites(),
+                    m.rejectedWrites(), m.slotsBroadcast(), m.bytesBroadcast(), m.requests(), snapshot.count(),
+                    micros(snapshot.percentile(0.99)), journal.count(), micros(journal.percentile(0.99)));
+        }
+        return String.format(Locale.ROOT, "{\"timestamp\":\"%s\",\"group\":\"%s\",\"members\":%d,\"scans\":%d,"
+                        + "\"scan_p50_us\":%d,\"scan_p99_us\":%d,\"scan_max_us\":%d,\"queue_depth_p99\":%d,\"queue_depth_max\":%d,"
+                        + "\"applied_writes\":%d,\"conflicting_writes\":%d,\"rejected_writes\":%d,\"slots_broadcast\":%d,"
+                        + "\"bytes_broadcast\":%d,\"requests\":%d,\"snapshot_writes\":%d,\"snapshot_write_p99_us\":%d,"
+                        + "\"journal_flushes\":%d,\"journal_flush_p99_us\":%d}%n",
+                timestamp, group, members, scan.count(), micros(scan.percentile(0.50)), micros(scan.percentile(0.99)),
+                micros(scan.max()), depth.percentile(0.99), depth.max(), m.appliedWrites(), m.conflictingWrites(),
+                m.rejectedWrites(), m.slotsBroadcast(), m.bytesBroadcast(), m.requests(), snapshot.count(),
+                micros(snapshot.percentile(0.99)), journal.count(), micros(journal.percentile(0.99)));
+    }
+
+    /**
+     * Appends {@code rows}, starting a CSV file with its header. Failures are logged, not thrown:
+     * a missed sample must not disturb the server.
+     */
+    public static void write(Path file, Format format, String rows) {
+        try {
+            boolean fresh = !Files.exists(file);
+            String content = fresh && format == Format.CSV ? CSV_HEADER + rows : rows;
+            Files.writeString(file, content, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] failed to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1_000L;
+    }
+}
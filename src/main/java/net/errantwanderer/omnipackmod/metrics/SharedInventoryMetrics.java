@@ -0,0 +1,179 @@
+package net.errantwanderer.omnipackmod.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Counters and histograms for one shared inventory group, read by /omnipack stats and the
+ * periodic MetricsDump.
+ *
+ * - Everything is cumulative since server start (or the last reset()); rates are derived by
+ *   whoever reads them
+ * - Recording is a field increment or a Histogram.record, cheap enough for the hot paths
+ * - Per-player request counts are kept per REQUEST_WINDOW_NANOS window; the last complete
+ *   window is what requestRates() reports
+ *
+ * Server thread only, except the persistence histograms, which the writer threads record into.
+ */
+public final class SharedInventoryMetrics {
+    private static final long REQUEST_WINDOW_NANOS = 60_000_000_000L;
+
+    private final Histogram scanNanos = new Histogram();
+    private final Histogram queueDepth = new Histogram();
+    private final Histogram snapshotWriteNanos = new Histogram();
+    private final Histogram journalFlushNanos = new Histogram();
+
+    private long appliedWrites;
+    private long conflictingWrites;
+    private long rejectedWrites;
+    private long slotsBroadcast;
+    private long bytesBroadcast;
+    private long requests;
+
+    private Map<UUID, Long> requestsThisWindow = new HashMap<>();
+    private Map<UUID, Long> requestsLastWindow = new HashMap<>();
+    private long windowStartNanos = System.nanoTime();
+    private long lastWindowNanos = 0L;
+
+    /**
+     * One detection pass (DETECT phase call) took {@code nanos}.
+     */
+    public void recordScan(long nanos) {
+        scanNanos.record(nanos);
+    }
+
+    /**
+     * Slots with a write waiting when an apply pass starts.
+     */
+    public void recordQueueDepth(int pendingSlots) {
+        queueDepth.record(pendingSlots);
+    }
+
+    public void recordApplied() {
+        appliedWrites++;
+    }
+
+    /**
+     * A stale write; {@code merged} if the three-way merge resolved it, otherwise it was rejected.
+     */
+    public void recordConflict(boolean merged) {
+        conflictingWrites++;
+        if (!merged) rejectedWrites++;
+    }
+
+    /**
+     * One send of {@code slots} shared slots; {@code bytes} is the encoded payload size, or 0
+     * when the payload was not pre-encoded.
+     */
+    public void recordBroadcast(int slots, int bytes) {
+        slotsBroadcast += slots;
+        bytesBroadcast += Math.max(0, bytes);
+    }
+
+    /**
+     * {@code count} click actions received from {@code player}.
+     */
+    public void recordRequests(UUID player, int count) {
+        rollRequestWindow(System.nanoTime());
+        requests += count;
+        requestsThisWindow.merge(player, (long) count, Long::sum);
+    }
+
+    private void rollRequestWindow(long now) {
+        long elapsed = now - windowStartNanos;
+        if (elapsed < REQUEST_WINDOW_NANOS) return;
+        Map<UUID, Long> previous = requestsLastWindow;
+        previous.clear();
+        requestsLastWindow = requestsThisWindow;
+        requestsThisWindow = previous;
+        lastWindowNanos = elapsed;
+        windowStartNanos = now;
+    }
+
+    public Histogram scanNanos() {
+        return scanNanos;
+    }
+
+    public Histogram queueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Encode + atomic write of one SavedData snapshot, on the persistence thread.
+     */
+    public Histogram snapshotWriteNanos() {
+        return snapshotWriteNanos;
+    }
+
+    /**
+     * Append + fsync of one journal flush, on the journal thread.
+     */
+    public Histogram journalFlushNanos() {
+        return journalFlushNanos;
+    }
+
+    public long appliedWrites() {
+        return appliedWrites;
+    }
+
+    public long conflictingWrites() {
+        return conflictingWrites;
+    }
+
+    public long rejectedWrites() {
+        return rejectedWrites;
+    }
+
+    public long slotsBroadcast() {
+        return slotsBroadcast;
+    }
+
+    public long bytesBroadcast() {
+        return bytesBroadcast;
+    }
+
+    public long requests() {
+        return requests;
+    }
+
+    /**
+     * Requests per second of each player that sent any, over the last complete window (or the
+     * current one if none has completed yet), highest first.
+     */
+    public List<RequestRate> requestRates() {
+        long now = System.nanoTime();
+        rollRequestWindow(now);
+        boolean completed = lastWindowNanos > 0L;
+        Map<UUID, Long> counts = completed ? requestsLastWindow : requestsThisWindow;
+        double seconds = Math.max(1.0, (completed ? lastWindowNanos : now - windowStartNanos) / 1e9);
+
+        List<RequestRate> rates = new ArrayList<>(counts.size());
+        for (Map.Entry<UUID, Long> entry : counts.entrySet()) {
+            rates.add(new RequestRate(entry.getKey(), entry.getValue() / seconds));
+        }
+        rates.sort((a, b) -> Double.compare(b.perSecond(), a.perSecond()));
+        return rates;
+    }
+
+    public void reset() {
+        scanNanos.reset();
+        queueDepth.reset();
+        snapshotWriteNanos.reset();
+        journalFlushNanos.reset();
+        appliedWrites = 0L;
+        conflictingWrites = 0L;
+        rejectedWrites = 0L;
+        slotsBroadcast = 0L;
+        bytesBroadcast = 0L;
+        requests = 0L;
+        requestsThisWindow.clear();
+        requestsLastWindow.clear();
+        windowStartNanos = System.nanoTime();
+        lastWindowNanos = 0L;
+    }
+
+    public record RequestRate(UUID player, double perSecond) { }
+}
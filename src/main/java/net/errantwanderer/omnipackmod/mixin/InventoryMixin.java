@@ -0,0 +1,86 @@
+package net.errantwanderer.omnipackmod.mixin;
+
+import net.errantwanderer.omnipackmod.DirtySlotTracker;
+import net.errantwanderer.omnipackmod.SharedInventoryManager;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.ItemStack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Records which slots of a player inventory were touched, so the shared inventory manager
+ * only has to look at those slots instead of comparing all 41 every tick.
+ *
+ * Single-slot mutators mark their slot; anything that may have edited stacks in place
+ * (setChanged, add, bulk operations) marks the whole inventory.
+ */
+@Mixin(Inventory.class)
+public abstract class InventoryMixin implements DirtySlotTracker {
+    @Unique
+    private long omnipack$dirtyMask;
+
+    @Override
+    public void omnipack$markSlotDirty(int slot) {
+        // Inventory also maps BODY (41) and SADDLE (42); they are not shared and have no bit
+        if (slot >= 0 && slot < SharedInventoryManager.SHARED_SLOT_COUNT) {
+            omnipack$dirtyMask |= 1L << slot;
+        }
+    }
+
+    @Override
+    public void omnipack$markAllDirty() {
+        omnipack$dirtyMask = ALL_SLOTS;
+    }
+
+    @Override
+    public long omnipack$consumeDirtyMask() {
+        long mask = omnipack$dirtyMask;
+        omnipack$dirtyMask = 0L;
+        return mask;
+    }
+
+    @Inject(method = "setItem(ILnet/minecraft/world/item/ItemStack;)V", at = @At("RETURN"))
+    private void omnipack$onSetItem(int slot, ItemStack stack, CallbackInfo ci) {
+        omnipack$markSlotDirty(slot);
+    }
+
+    @Inject(method = "removeItem(II)Lnet/minecraft/world/item/ItemStack;", at = @At("RETURN"))
+    private void omnipack$onRemoveItem(int slot, int amount, CallbackInfoReturnable<ItemStack> cir) {
+        omnipack$markSlotDirty(slot);
+    }
+
+    @Inject(method = "removeItemNoUpdate(I)Lnet/minecraft/world/item/ItemStack;", at = @At("RETURN"))
+    private void omnipack$onRemoveItemNoUpdate(int slot, CallbackInfoReturnable<ItemStack> cir) {
+        omnipack$markSlotDirty(slot);
+    }
+
+    // add() grows existing stacks in place, so we cannot tell which slot it picked
+    @Inject(method = "add(ILnet/minecraft/world/item/ItemStack;)Z", at = @At("RETURN"))
+    private void omnipack$onAdd(int slot, ItemStack stack, CallbackInfoReturnable<Boolean> cir) {
+        omnipack$markAllDirty();
+    }
+
+    @Inject(method = "removeItem(Lnet/minecraft/world/item/ItemStack;)V", at = @At("RETURN"))
+    private void omnipack$onRemoveStack(ItemStack stack, CallbackInfo ci) {
+        omnipack$markAllDirty();
+    }
+
+    @Inject(method = "setChanged()V", at = @At("RETURN"))
+    private void omnipack$onSetChanged(CallbackInfo ci) {
+        omnipack$markAllDirty();
+    }
+
+    @Inject(method = "clearContent()V", at = @At("RETURN"))
+    private void omnipack$onClearContent(CallbackInfo ci) {
+        omnipack$markAllDirty();
+    }
+
+    @Inject(method = "dropAll()V", at = @At("RETURN"))
+    private void omnipack$onDropAll(CallbackInfo ci) {
+        omnipack$markAllDirty();
+    }
+}
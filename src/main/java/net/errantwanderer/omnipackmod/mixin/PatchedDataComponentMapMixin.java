@@ -0,0 +1,42 @@
+package net.errantwanderer.omnipackmod.mixin;
+
+import net.minecraft.core.component.PatchedDataComponentMap;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Caches a stack's component hash so StackFingerprint is O(1) after the first call, even for
+ * shulker boxes, books and heavily enchanted gear.
+ *
+ * Every mutator of the map goes through ensureMapOwnership() first, which drops the cached value.
+ * Component values themselves are immutable, so nothing else can change the hash.
+ */
+@Mixin(PatchedDataComponentMap.class)
+public abstract class PatchedDataComponentMapMixin {
+    @Unique
+    private int omnipack$hash;
+    @Unique
+    private boolean omnipack$hashValid;
+
+    @Inject(method = "hashCode", at = @At("HEAD"), cancellable = true)
+    private void omnipack$cachedHash(CallbackInfoReturnable<Integer> cir) {
+        if (omnipack$hashValid) {
+            cir.setReturnValue(omnipack$hash);
+        }
+    }
+
+    @Inject(method = "hashCode", at = @At("RETURN"))
+    private void omnipack$storeHash(CallbackInfoReturnable<Integer> cir) {
+        omnipack$hash = cir.getReturnValueI();
+        omnipack$hashValid = true;
+    }
+
+    @Inject(method = "ensureMapOwnership", at = @At("HEAD"))
+    private void omnipack$invalidateHash(CallbackInfo ci) {
+        omnipack$hashValid = false;
+    }
+}
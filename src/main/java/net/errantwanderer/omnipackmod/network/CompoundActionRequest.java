@@ -0,0 +1,48 @@
+package net.errantwanderer.omnipackmod.network;
+
+import java.util.List;
+
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * Client -> Server: one whole inventory gesture (shift-click, number-key swap, drag-split,
+ * double-click collect) as the ordered menu clicks vanilla would have sent one by one.
+ * The server runs every step in one go, all or nothing, and answers with a single
+ * SlotActionResponse for the gesture's sequence number.
+ */
+public record CompoundActionRequest(int sequence, List<Step> steps) implements CustomPacketPayload {
+    // a drag over every slot of a double chest plus the player inventory, with start and end
+    public static final int MAX_STEPS = 128;
+
+    public static final CustomPacketPayload.Type<CompoundActionRequest> TYPE =
+            new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("omnipackmod", "compound_action_request"));
+
+    public static final StreamCodec<io.netty.buffer.ByteBuf, CompoundActionRequest> STREAM_CODEC =
+            StreamCodec.composite(
+                    ByteBufCodecs.VAR_INT, CompoundActionRequest::sequence,
+                    Step.STREAM_CODEC.apply(ByteBufCodecs.list(MAX_STEPS)), CompoundActionRequest::steps,
+                    CompoundActionRequest::new
+            );
+
+    /**
+     * One menu click, as passed to AbstractContainerMenu.clicked. slotIndex may be -999
+     * (outside the menu, used by drag start/end).
+     */
+    public record Step(int slotIndex, int button, int clickTypeOrdinal) {
+        public static final StreamCodec<io.netty.buffer.ByteBuf, Step> STREAM_CODEC =
+                StreamCodec.composite(
+                        ByteBufCodecs.VAR_INT, Step::slotIndex,
+                        ByteBufCodecs.VAR_INT, Step::button,
+                        ByteBufCodecs.VAR_INT, Step::clickTypeOrdinal,
+                        Step::new
+                );
+    }
+
+    @Override
+    public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+}
@@ -0,0 +1,25 @@
+package net.errantwanderer.omnipackmod.network;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * Client -> Server: whether the player currently has an inventory or container screen open.
+ * Sent only when that changes; the server uses it to decide who gets every shared slot delta
+ * immediately and who can wait for a coalesced update.
+ */
+public record InventoryInterestPayload(boolean viewing) implements CustomPacketPayload {
+    public static final CustomPacketPayload.Type<InventoryInterestPayload> TYPE =
+            new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("omnipackmod", "inventory_interest"));
+
+    public static final StreamCodec<ByteBuf, InventoryInterestPayload> STREAM_CODEC =
+            ByteBufCodecs.BOOL.map(InventoryInterestPayload::new, InventoryInterestPayload::viewing);
+
+    @Override
+    public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+}
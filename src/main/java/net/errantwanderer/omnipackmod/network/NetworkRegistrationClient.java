@@ -1,26 +1,44 @@
 package net.errantwanderer.omnipackmod.network;
 
+import net.errantwanderer.omnipackmod.ClickPredictor;
 import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.errantwanderer.omnipackmod.metrics.ActionTrace;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.world.entity.player.Player;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.neoforge.client.network.ClientPacketDistributor;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.api.distmarker.Dist;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Client-side payload registration and sender helper.
  *
- * - Marks SlotActionRequest as sendable from client -> server (playToServer).
+ * - Serverbound payloads (clicks, batches, gestures, interest) are registered with their handlers
+ *   by NetworkRegistrationServer on both dists, so the integrated server of a singleplayer or
+ *   LAN host handles them too; only the clientbound side is registered here.
  * - Registers clientbound SlotActionResponse handler.
+ * - Registers clientbound SharedInventorySyncPayload and applies its slot batch to the local inventory,
+ *   dropping deltas whose epoch is not newer than the last one applied.
  * - Buffers sends attempted before registration completes.
+ * - Collects slot clicks during a client tick and sends them as one SlotActionBatch (flushActions);
+ *   multi-click gestures go out as one CompoundActionRequest (sendGesture).
+ * - Traces received responses to ActionTrace.CLIENT instead of logging each one.
  */
 @EventBusSubscriber(modid = OmniPackMod.MOD_ID, value = Dist.CLIENT)
 public class NetworkRegistrationClient {
     private static volatile boolean NETWORK_READY = false;
-    private static final Queue<SlotActionRequest> PENDING = new ConcurrentLinkedQueue<>();
+    private static final Queue<CustomPacketPayload> PENDING = new ConcurrentLinkedQueue<>();
+    // clicks made since the last flushActions, in order; main client thread only
+    private static final List<SlotActionRequest> PENDING_ACTIONS = new ArrayList<>();
+    // epoch of the last shared inventory delta applied (-1 = none since the last full resync); main client thread only
+    private static long lastSyncEpoch = -1L;
 
     static {
         OmniPackMod.LOGGER.info("[OmniPackMod] NetworkRegistrationClient loaded");
@@ -32,18 +50,6 @@ public class NetworkRegistrationClient {
 
         var registrar = event.registrar("1");
 
-        // Mark the request as sendable from client -> server. Provide a no-op receiver
-        // so that this payload is known on the client as "can be sent to server".
-        registrar.playToServer(
-                SlotActionRequest.TYPE,
-                SlotActionRequest.STREAM_CODEC,
-                (payload, ctx) -> {
-                    // This should not happen: client should never receive the serverbound request.
-                    OmniPackMod.LOGGER.warn("[OmniPackMod] Unexpected SlotActionRequest delivered to client");
-                }
-        );
-        OmniPackMod.LOGGER.info("[OmniPackMod] SlotActionRequest marked playToServer on client");
-
         // Register the server -> client response handler (clientbound)
         registrar.playToClient(
                 SlotActionResponse.TYPE,
@@ -51,22 +57,51 @@ public class NetworkRegistrationClient {
                 (payload, ctx) -> {
                     // schedule on main thread if needed
                     ctx.enqueueWork(() -> {
-                        OmniPackMod.LOGGER.info("[OmniPackMod] SlotActionResponse received on client (slot={} accepted={})",
-                                payload.slotIndex(), payload.accepted());
-                        // no-op: server will push authoritative inventory updates separately
+                        ActionTrace.CLIENT.record(ActionTrace.Kind.RESPONSE_RECEIVED, null, payload.slotIndex(), payload.sequence(),
+                                payload.accepted() ? payload.slots().size() : -1);
+                        // roll back whatever our local prediction got wrong
+                        ClickPredictor.reconcile(payload, ctx.player());
                     });
                 }
         );
         OmniPackMod.LOGGER.info("[OmniPackMod] SlotActionResponse registered (clientbound)");
 
+        // Batched shared inventory updates (replaces one vanilla packet per slot)
+        registrar.playToClient(
+                SharedInventorySyncPayload.TYPE,
+                SharedInventorySyncPayload.STREAM_CODEC,
+                (payload, ctx) -> ctx.enqueueWork(() -> applySharedInventorySync(payload, ctx.player()))
+        );
+        OmniPackMod.LOGGER.info("[OmniPackMod] SharedInventorySyncPayload registered (clientbound)");
+
         // finished registering — now allow queued sends
         NETWORK_READY = true;
         OmniPackMod.LOGGER.info("[OmniPackMod] NETWORK_READY = true — flushing pending sends");
         flushPending();
     }
 
+    private static void applySharedInventorySync(SharedInventorySyncPayload payload, Player player) {
+        if (player == null) return;
+        long epoch = payload.epoch().orElse(-1L);
+        if (payload.epoch().isPresent() && epoch <= lastSyncEpoch) {
+            // stale or reordered delta: a newer state of these slots has already been applied
+            OmniPackMod.LOGGER.debug("[OmniPackMod] dropped shared inventory delta {} (last applied {})", epoch, lastSyncEpoch);
+            return;
+        }
+
+        Inventory inv = player.getInventory();
+        for (SharedInventorySyncPayload.SlotUpdate update : payload.updates()) {
+            int slot = update.slotIndex();
+            if (slot >= 0 && slot < inv.getContainerSize()) {
+                inv.setItem(slot, update.stack());
+            }
+        }
+        // a full resync (no epoch) starts a new sequence
+        lastSyncEpoch = epoch;
+    }
+
     private static void flushPending() {
-        SlotActionRequest req;
+        CustomPacketPayload req;
         while ((req = PENDING.poll()) != null) {
             sendNow(req);
         }
@@ -75,24 +110,61 @@ public class NetworkRegistrationClient {
     /**
      * Public helper for UI code: queue if registry not ready.
      */
-    public static void sendOrQueue(SlotActionRequest req) {
+    public static void sendOrQueue(CustomPacketPayload req) {
         if (NETWORK_READY) {
             sendNow(req);
         } else {
             PENDING.add(req);
-            OmniPackMod.LOGGER.info("[OmniPackMod] network not ready, queued SlotActionRequest(slot={})", req.slotIndex());
+            OmniPackMod.LOGGER.info("[OmniPackMod] network not ready, queued {}", req.type().id());
+        }
+    }
+
+    /**
+     * Queues a predicted click for the end of this client tick instead of sending it right away.
+     */
+    public static void queueAction(SlotActionRequest action) {
+        PENDING_ACTIONS.add(action);
+    }
+
+    /**
+     * Sends the clicks queued this tick as one batch; call once per client tick. Anything beyond
+     * SlotActionBatch.MAX_ACTIONS waits for the next tick.
+     */
+    public static void flushActions() {
+        if (PENDING_ACTIONS.isEmpty()) return;
+
+        int count = Math.min(PENDING_ACTIONS.size(), SlotActionBatch.MAX_ACTIONS);
+        List<SlotActionRequest> batch = new ArrayList<>(PENDING_ACTIONS.subList(0, count));
+        PENDING_ACTIONS.subList(0, count).clear();
+        sendOrQueue(new SlotActionBatch(batch));
+    }
+
+    /**
+     * Sends a gesture right away, after any clicks queued before it so the server sees them in order.
+     */
+    public static void sendGesture(CompoundActionRequest gesture) {
+        while (!PENDING_ACTIONS.isEmpty()) {
+            flushActions();
         }
+        sendOrQueue(gesture);
+    }
+
+    /**
+     * Drops queued clicks, e.g. after a disconnect; their predictions die with the connection.
+     */
+    public static void clearActions() {
+        PENDING_ACTIONS.clear();
     }
 
     /**
      * Use Neoforge helper to send to server — do NOT construct vanilla ServerboundCustomPayloadPacket manually.
      */
-    private static void sendNow(SlotActionRequest req) {
+    private static void sendNow(CustomPacketPayload req) {
         try {
             // ClientPacketDistributor wraps / wraps correctly for you.
             ClientPacketDistributor.sendToServer(req);
         } catch (Throwable t) {
-            OmniPackMod.LOGGER.warn("[OmniPackMod] Failed to send slot action request (via ClientPacketDistributor): {}", t.getMessage());
+            OmniPackMod.LOGGER.warn("[OmniPackMod] Failed to send {} (via ClientPacketDistributor): {}", req.type().id(), t.getMessage());
         }
     }
 }
\ No newline at end of file
@@ -1,19 +1,33 @@
 package net.errantwanderer.omnipackmod.network;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import net.errantwanderer.omnipackmod.ActionRateLimiter;
 import net.errantwanderer.omnipackmod.OmniPackMod;
 import net.errantwanderer.omnipackmod.SharedInventoryManager;
+import net.errantwanderer.omnipackmod.metrics.ActionTrace;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.inventory.AbstractContainerMenu;
 import net.minecraft.world.inventory.ClickType;
+import net.minecraft.world.item.ItemStack;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.api.distmarker.Dist;
 
 /**
- * Server-side payload registration: register the client -> server request here.
+ * Server-side payload registration: registers the client -> server requests and their handlers
+ * on both dists, since a singleplayer or LAN host runs its integrated server on the client dist.
+ * A dedicated server also declares the clientbound payloads it sends (DedicatedServer); on the
+ * client dist NetworkRegistrationClient registers those with their real handlers.
+ *
+ * Per-action events go to ActionTrace.SERVER, not the log; only errors are logged.
  */
-@EventBusSubscriber(modid = OmniPackMod.MOD_ID, value = Dist.DEDICATED_SERVER)
+@EventBusSubscriber(modid = OmniPackMod.MOD_ID)
 public class NetworkRegistrationServer {
 
     static {
@@ -22,61 +36,261 @@ public class NetworkRegistrationServer {
 
     @SubscribeEvent
     public static void onRegisterPayloads(RegisterPayloadHandlersEvent event) {
-        OmniPackMod.LOGGER.info("[OmniPackMod] Registering serverbound payloads (server)");
+        OmniPackMod.LOGGER.info("[OmniPackMod] Registering serverbound payloads");
 
         var registrar = event.registrar("1"); // keep version string stable
 
-        // Register client -> server request (SlotActionRequest) as serverbound
+        // Register client -> server requests as serverbound: single clicks, and the per-tick batches
+        // current clients send. Both go through handleActions.
         registrar.playToServer(
                 SlotActionRequest.TYPE,
                 SlotActionRequest.STREAM_CODEC,
-                (payload, ctx) -> {
-                    OmniPackMod.LOGGER.info("[OmniPackMod] Received SlotActionRequest (server) from player={}",
-                            ctx.player() != null ? ctx.player().getName().getString() : "UNKNOWN");
-
-                    // schedule on main thread; enqueueWork returns a CompletableFuture
-                    ctx.enqueueWork(() -> {
-                        var p = ctx.player();
-                        if (!(p instanceof ServerPlayer player)) {
-                            OmniPackMod.LOGGER.warn("[OmniPackMod] payload context player is not ServerPlayer");
-                            return;
-                        }
+                // schedule on main thread; enqueueWork returns a CompletableFuture
+                (payload, ctx) -> ctx.enqueueWork(() -> handleActions(ctx, List.of(payload))).exceptionally(e -> {
+                    OmniPackMod.LOGGER.warn("[OmniPackMod] exception while handling SlotActionRequest: {}", e.getMessage());
+                    return null;
+                })
+        );
+        registrar.playToServer(
+                SlotActionBatch.TYPE,
+                SlotActionBatch.STREAM_CODEC,
+                (payload, ctx) -> ctx.enqueueWork(() -> handleActions(ctx, payload.actions())).exceptionally(e -> {
+                    OmniPackMod.LOGGER.warn("[OmniPackMod] exception while handling SlotActionBatch: {}", e.getMessage());
+                    return null;
+                })
+        );
 
-                        // Defensive mapping ordinal -> ClickType
-                        ClickType clickType = ClickType.PICKUP;
-                        try {
-                            ClickType[] ct = ClickType.values();
-                            int idx = Math.max(0, Math.min(ct.length - 1, payload.clickTypeOrdinal()));
-                            clickType = ct[idx];
-                        } catch (Throwable ignored) {
-                            OmniPackMod.LOGGER.warn("[OmniPackMod] invalid clickTypeOrdinal {}, defaulting to PICKUP", payload.clickTypeOrdinal());
-                        }
+        registrar.playToServer(
+                CompoundActionRequest.TYPE,
+                CompoundActionRequest.STREAM_CODEC,
+                (payload, ctx) -> ctx.enqueueWork(() -> handleGesture(ctx, payload)).exceptionally(e -> {
+                    OmniPackMod.LOGGER.warn("[OmniPackMod] exception while handling CompoundActionRequest: {}", e.getMessage());
+                    return null;
+                })
+        );
 
-                        try {
-                            // Call vanilla server-side click handler (mutates inventories)
-                            player.containerMenu.clicked(payload.slotIndex(), payload.button(), clickType, player);
-                            OmniPackMod.LOGGER.info("[OmniPackMod] Applied click for {} slot={}", player.getName().getString(), payload.slotIndex());
-                        } catch (Throwable t) {
-                            OmniPackMod.LOGGER.warn("[OmniPackMod] Error invoking container click: {}", t.getMessage());
-                        }
+        OmniPackMod.LOGGER.info("[OmniPackMod] Registered SlotActionRequest, SlotActionBatch and CompoundActionRequest as serverbound");
 
-                        // Update shared inventory manager immediately
-                        MinecraftServer server = player.getServer();
-                        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager();
-                        if (manager != null && server != null) {
-                            manager.handleImmediatePlayerAction(player, server);
-                            OmniPackMod.LOGGER.info("[OmniPackMod] SharedInventoryManager processed request from {}", player.getName().getString());
+        registrar.playToServer(
+                InventoryInterestPayload.TYPE,
+                InventoryInterestPayload.STREAM_CODEC,
+                (payload, ctx) -> ctx.enqueueWork(() -> {
+                    if (ctx.player() instanceof ServerPlayer player) {
+                        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager(player);
+                        if (manager != null) {
+                            manager.setViewingInventory(player, payload.viewing());
                         }
-
-                        // Optionally reply ack to the client
-                        ctx.reply(new SlotActionResponse(true, payload.slotIndex()));
-                    }).exceptionally(e -> {
-                        OmniPackMod.LOGGER.warn("[OmniPackMod] exception while handling SlotActionRequest: {}", e.getMessage());
-                        return null;
-                    });
-                }
+                    }
+                })
         );
 
-        OmniPackMod.LOGGER.info("[OmniPackMod] Registered SlotActionRequest as serverbound");
+    }
+
+    /**
+     * Clientbound payloads must be known on a dedicated server too, otherwise they cannot be sent.
+     * The handlers never run here.
+     */
+    @EventBusSubscriber(modid = OmniPackMod.MOD_ID, value = Dist.DEDICATED_SERVER)
+    public static final class DedicatedServer {
+        @SubscribeEvent
+        public static void onRegisterPayloads(RegisterPayloadHandlersEvent event) {
+            var registrar = event.registrar("1");
+            registrar.playToClient(
+                    SlotActionResponse.TYPE,
+                    SlotActionResponse.STREAM_CODEC,
+                    (payload, ctx) -> OmniPackMod.LOGGER.warn("[OmniPackMod] Unexpected SlotActionResponse delivered to server")
+            );
+            registrar.playToClient(
+                    SharedInventorySyncPayload.TYPE,
+                    SharedInventorySyncPayload.STREAM_CODEC,
+                    (payload, ctx) -> OmniPackMod.LOGGER.warn("[OmniPackMod] Unexpected SharedInventorySyncPayload delivered to server")
+            );
+            OmniPackMod.LOGGER.info("[OmniPackMod] Registered SlotActionResponse and SharedInventorySyncPayload as clientbound");
+        }
+    }
+
+    private static void handleActions(IPayloadContext ctx, List<SlotActionRequest> actions) {
+        if (!(ctx.player() instanceof ServerPlayer player)) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] payload context player is not ServerPlayer");
+            return;
+        }
+        applyActions(player, actions, ctx::reply);
+    }
+
+    /**
+     * Runs a client's clicks in order. Each one is rate limited and answered with its own
+     * SlotActionResponse; the shared inventory sees the combined result once, through
+     * recordPlayerAction, and broadcasts it with the next tick's immediate pass.
+     * Public so the load test can drive the exact packet handler path without a connection.
+     */
+    public static void applyActions(ServerPlayer player, List<SlotActionRequest> actions, Consumer<SlotActionResponse> reply) {
+        ActionRateLimiter limiter = OmniPackMod.getSharedInventoryGroups().getActionLimiter();
+        recordRequests(player, actions.size());
+        prepareSharedInventory(player);
+        boolean applied = false;
+        boolean clickFailed = false;
+        for (SlotActionRequest action : actions) {
+            AbstractContainerMenu menu = player.containerMenu;
+            ActionTrace.SERVER.record(ActionTrace.Kind.ACTION_RECEIVED, player.getUUID(), action.slotIndex(), action.sequence(),
+                    action.button() << 8 | action.clickTypeOrdinal());
+            if (!limiter.tryAcquire(player.getUUID())) {
+                ActionTrace.SERVER.record(ActionTrace.Kind.ACTION_REFUSED, player.getUUID(), action.slotIndex(), action.sequence(), 0);
+                // refused untouched: the client rolls its prediction back to what it had before
+                reply.accept(new SlotActionResponse(false, action.slotIndex(), action.sequence(), List.of(), menu.getCarried().copy()));
+                continue;
+            }
+
+            // remember the menu as it was, so the response can carry exactly what the click changed
+            ItemStack[] before = copyMenuSlots(menu);
+            boolean failed = !applyClick(player, menu, action.slotIndex(), action.button(), action.clickTypeOrdinal(), action.sequence());
+            clickFailed |= failed;
+            applied = true;
+
+            // Authoritative result for the client's prediction of this sequence
+            reply.accept(new SlotActionResponse(!failed, action.slotIndex(), action.sequence(),
+                    changedMenuSlots(menu, before), menu.getCarried().copy()));
+        }
+        if (applied) {
+            // one detection for the whole batch
+            updateSharedInventory(player, clickFailed, actions.size());
+        }
+    }
+
+    /**
+     * Runs a whole gesture against the player's menu as one unit: if any step fails, the menu
+     * and carried stack are put back as they were and the gesture is refused. The client gets a
+     * single response covering every slot the gesture changed, and the shared inventory a single
+     * diff.
+     */
+    private static void handleGesture(IPayloadContext ctx, CompoundActionRequest gesture) {
+        if (!(ctx.player() instanceof ServerPlayer player)) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] payload context player is not ServerPlayer");
+            return;
+        }
+
+        recordRequests(player, 1);
+        AbstractContainerMenu menu = player.containerMenu;
+        int firstSlot = gesture.steps().isEmpty() ? -999 : gesture.steps().get(0).slotIndex();
+        ActionTrace.SERVER.record(ActionTrace.Kind.GESTURE_RECEIVED, player.getUUID(), firstSlot, gesture.sequence(), gesture.steps().size());
+        // a gesture is one user action, however many steps it takes
+        if (gesture.steps().isEmpty() || !OmniPackMod.getSharedInventoryGroups().getActionLimiter().tryAcquire(player.getUUID())) {
+            ActionTrace.SERVER.record(ActionTrace.Kind.ACTION_REFUSED, player.getUUID(), firstSlot, gesture.sequence(), 0);
+            ctx.reply(new SlotActionResponse(false, firstSlot, gesture.sequence(), List.of(), menu.getCarried().copy()));
+            return;
+        }
+
+        prepareSharedInventory(player);
+        ItemStack[] before = copyMenuSlots(menu);
+        ItemStack carriedBefore = menu.getCarried().copy();
+        boolean failed = false;
+        for (CompoundActionRequest.Step step : gesture.steps()) {
+            if (!applyClick(player, menu, step.slotIndex(), step.button(), step.clickTypeOrdinal(), gesture.sequence())) {
+                failed = true;
+                break;
+            }
+        }
+        if (failed) {
+            restoreMenuSlots(menu, before, carriedBefore);
+        }
+
+        ctx.reply(new SlotActionResponse(!failed, firstSlot, gesture.sequence(),
+                changedMenuSlots(menu, before), menu.getCarried().copy()));
+        updateSharedInventory(player, failed, gesture.steps().size());
+    }
+
+    /**
+     * Counts received actions, refused or not, towards the player's request rate in /omnipack stats.
+     */
+    private static void recordRequests(ServerPlayer player, int count) {
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager(player);
+        if (manager != null) {
+            manager.getMetrics().recordRequests(player.getUUID(), count);
+        }
+    }
+
+    /**
+     * Brings the player's server-side copy of the shared slots up to date before its clicks run,
+     * so they never act on items another member has already moved.
+     */
+    private static void prepareSharedInventory(ServerPlayer player) {
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager(player);
+        if (manager != null) {
+            manager.beforePlayerAction(player);
+        }
+    }
+
+    private static void updateSharedInventory(ServerPlayer player, boolean clickFailed, int actionCount) {
+        MinecraftServer server = player.getServer();
+        SharedInventoryManager manager = OmniPackMod.getSharedInventoryManager(player);
+        if (manager != null && server != null) {
+            if (clickFailed) {
+                // a click may have half-applied; commit what is there and resend the authoritative state
+                manager.handleImmediatePlayerAction(player, server);
+                manager.resyncPlayer(player);
+            } else {
+                manager.recordPlayerAction(player);
+            }
+            ActionTrace.SERVER.record(ActionTrace.Kind.ACTIONS_PROCESSED, player.getUUID(), clickFailed ? 1 : 0, 0, actionCount);
+        }
+    }
+
+    private static boolean applyClick(ServerPlayer player, AbstractContainerMenu menu, int slotIndex, int button, int clickTypeOrdinal,
+                                      int sequence) {
+        // Defensive mapping ordinal -> ClickType
+        ClickType clickType = ClickType.PICKUP;
+        try {
+            ClickType[] ct = ClickType.values();
+            int idx = Math.max(0, Math.min(ct.length - 1, clickTypeOrdinal));
+            clickType = ct[idx];
+        } catch (Throwable ignored) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] invalid clickTypeOrdinal {}, defaulting to PICKUP", clickTypeOrdinal);
+        }
+
+        // same check vanilla applies to its own click packets
+        if (!menu.isValidSlotIndex(slotIndex)) {
+            ActionTrace.SERVER.record(ActionTrace.Kind.INVALID_SLOT, player.getUUID(), slotIndex, sequence, 0);
+            return false;
+        }
+
+        try {
+            // Call vanilla server-side click handler (mutates inventories)
+            menu.clicked(slotIndex, button, clickType, player);
+            ActionTrace.SERVER.record(ActionTrace.Kind.ACTION_APPLIED, player.getUUID(), slotIndex, sequence, 0);
+            return true;
+        } catch (Throwable t) {
+            ActionTrace.SERVER.record(ActionTrace.Kind.ACTION_FAILED, player.getUUID(), slotIndex, sequence, 0);
+            OmniPackMod.LOGGER.warn("[OmniPackMod] Error invoking container click: {}", t.getMessage());
+            return false;
+        }
+    }
+
+    private static ItemStack[] copyMenuSlots(AbstractContainerMenu menu) {
+        ItemStack[] copy = new ItemStack[menu.slots.size()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = menu.getSlot(i).getItem().copy();
+        }
+        return copy;
+    }
+
+    private static void restoreMenuSlots(AbstractContainerMenu menu, ItemStack[] before, ItemStack carried) {
+        int size = Math.min(before.length, menu.slots.size());
+        for (int i = 0; i < size; i++) {
+            if (!ItemStack.matches(before[i], menu.getSlot(i).getItem())) {
+                menu.getSlot(i).set(before[i].copy());
+            }
+        }
+        menu.setCarried(carried);
+    }
+
+    private static List<SharedInventorySyncPayload.SlotUpdate> changedMenuSlots(AbstractContainerMenu menu, ItemStack[] before) {
+        List<SharedInventorySyncPayload.SlotUpdate> changed = new ArrayList<>();
+        int size = Math.min(before.length, menu.slots.size());
+        for (int i = 0; i < size; i++) {
+            ItemStack after = menu.getSlot(i).getItem();
+            if (!ItemStack.matches(before[i], after)) {
+                changed.add(new SharedInventorySyncPayload.SlotUpdate(i, after.copy()));
+            }
+        }
+        return changed;
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package net.errantwanderer.omnipackmod.network;
+
+import java.util.List;
+import java.util.Optional;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.network.connection.ConnectionType;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Server -> Client batch of shared slot updates.
+ * One frame carries every slot changed by a processing pass (varint slot + optional stack),
+ * instead of one vanilla ClientboundSetPlayerInventoryPacket per slot.
+ * The epoch is the sending manager's delta counter and grows with every delta; the client drops
+ * a delta whose epoch is not newer than the last one it applied. Full resyncs carry none: they
+ * replace every slot, and reset the client's counter (after a group move the new manager's
+ * counter may be lower).
+ *
+ * Broadcasts are built with {@link #encodeOnce}: the body is serialized a single time into an
+ * immutable byte array, and every connection just copies those bytes into its frame. Nothing is
+ * reference counted, so a payload that is never encoded (in-memory connections, i.e. the
+ * integrated server's host) leaks nothing.
+ * The decoded side (and in-memory connections) only ever look at {@code epoch} and {@code updates}.
+ */
+public record SharedInventorySyncPayload(Optional<Long> epoch, List<SlotUpdate> updates,
+                                         @Nullable byte[] encodedBody) implements CustomPacketPayload {
+    public static final CustomPacketPayload.Type<SharedInventorySyncPayload> TYPE =
+            new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("omnipackmod", "shared_inventory_sync"));
+
+    private static final StreamCodec<ByteBuf, Optional<Long>> EPOCH_CODEC = ByteBufCodecs.optional(ByteBufCodecs.VAR_LONG);
+    private static final StreamCodec<RegistryFriendlyByteBuf, List<SlotUpdate>> UPDATES_CODEC =
+            SlotUpdate.STREAM_CODEC.apply(ByteBufCodecs.list());
+
+    public static final StreamCodec<RegistryFriendlyByteBuf, SharedInventorySyncPayload> STREAM_CODEC =
+            StreamCodec.of(SharedInventorySyncPayload::write, SharedInventorySyncPayload::read);
+
+    public SharedInventorySyncPayload(Optional<Long> epoch, List<SlotUpdate> updates) {
+        this(epoch, updates, null);
+    }
+
+    /**
+     * Serializes the batch once. The returned payload can be sent to any number of players.
+     */
+    public static SharedInventorySyncPayload encodeOnce(Optional<Long> epoch, List<SlotUpdate> updates, RegistryAccess registryAccess) {
+        ByteBuf body = Unpooled.buffer();
+        try {
+            writeBody(new RegistryFriendlyByteBuf(body, registryAccess, ConnectionType.NEOFORGE), epoch, updates);
+            byte[] bytes = new byte[body.readableBytes()];
+            body.readBytes(bytes);
+            return new SharedInventorySyncPayload(epoch, updates, bytes);
+        } finally {
+            body.release();
+        }
+    }
+
+    /**
+     * Size of the shared encoded body in bytes, or 0 if this payload was not built by encodeOnce.
+     */
+    public int encodedSize() {
+        return encodedBody != null ? encodedBody.length : 0;
+    }
+
+    private static void write(RegistryFriendlyByteBuf buf, SharedInventorySyncPayload payload) {
+        byte[] body = payload.encodedBody();
+        if (body == null) {
+            writeBody(buf, payload.epoch(), payload.updates());
+            return;
+        }
+
+        // the array is never written after encodeOnce, so connections can copy it concurrently
+        buf.writeBytes(body);
+    }
+
+    private static void writeBody(RegistryFriendlyByteBuf buf, Optional<Long> epoch, List<SlotUpdate> updates) {
+        EPOCH_CODEC.encode(buf, epoch);
+        UPDATES_CODEC.encode(buf, updates);
+    }
+
+    private static SharedInventorySyncPayload read(RegistryFriendlyByteBuf buf) {
+        Optional<Long> epoch = EPOCH_CODEC.decode(buf);
+        List<SlotUpdate> updates = UPDATES_CODEC.decode(buf);
+        return new SharedInventorySyncPayload(epoch, updates);
+    }
+
+    @Override
+    public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    public record SlotUpdate(int slotIndex, ItemStack stack) {
+        public static final StreamCodec<RegistryFriendlyByteBuf, SlotUpdate> STREAM_CODEC =
+                StreamCodec.composite(
+                        ByteBufCodecs.VAR_INT, SlotUpdate::slotIndex,
+                        ItemStack.OPTIONAL_STREAM_CODEC, SlotUpdate::stack,
+                        SlotUpdate::new
+                );
+    }
+}
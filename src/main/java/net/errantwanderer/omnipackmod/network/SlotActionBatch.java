@@ -0,0 +1,29 @@
+package net.errantwanderer.omnipackmod.network;
+
+import java.util.List;
+
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * Client -> Server: every slot click made during one client tick, in order.
+ * The server runs them one by one, answers each with its own SlotActionResponse, and feeds the
+ * combined result into the shared inventory as one diff.
+ */
+public record SlotActionBatch(List<SlotActionRequest> actions) implements CustomPacketPayload {
+    public static final int MAX_ACTIONS = 64;
+
+    public static final CustomPacketPayload.Type<SlotActionBatch> TYPE =
+            new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("omnipackmod", "slot_action_batch"));
+
+    public static final StreamCodec<io.netty.buffer.ByteBuf, SlotActionBatch> STREAM_CODEC =
+            SlotActionRequest.STREAM_CODEC.apply(ByteBufCodecs.list(MAX_ACTIONS))
+                    .map(SlotActionBatch::new, SlotActionBatch::actions);
+
+    @Override
+    public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+}
@@ -7,10 +7,12 @@ import net.minecraft.resources.ResourceLocation;
 
 /**
  * Client -> Server request to perform a slot click.
- * We only send the slot index, the mouse/button index and an ordinal for click type.
- * The server will call player.containerMenu.clicked(...) and respond with a small ack.
+ * We only send the slot index, the mouse/button index, an ordinal for click type and the
+ * client's prediction sequence number.
+ * The server will call player.containerMenu.clicked(...) and respond with the authoritative
+ * result for that sequence (see SlotActionResponse).
  */
-public record SlotActionRequest(int slotIndex, int button, int clickTypeOrdinal) implements CustomPacketPayload {
+public record SlotActionRequest(int slotIndex, int button, int clickTypeOrdinal, int sequence) implements CustomPacketPayload {
     public static final CustomPacketPayload.Type<SlotActionRequest> TYPE =
             new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("omnipackmod", "slot_action_request"));
 
@@ -19,6 +21,7 @@ public record SlotActionRequest(int slotIndex, int button, int clickTypeOrdinal)
                     ByteBufCodecs.INT, SlotActionRequest::slotIndex,
                     ByteBufCodecs.INT, SlotActionRequest::button,
                     ByteBufCodecs.INT, SlotActionRequest::clickTypeOrdinal,
+                    ByteBufCodecs.VAR_INT, SlotActionRequest::sequence,
                     SlotActionRequest::new
             );
 
@@ -1,21 +1,33 @@
 package net.errantwanderer.omnipackmod.network;
 
+import java.util.List;
+
+import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.codec.StreamCodec;
 import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
 
 /**
- * Server -> Client lightweight acknowledgement payload.
+ * Server -> Client authoritative result of one SlotActionRequest.
+ * Carries the request's sequence number, the menu slots the server's click changed
+ * (menu slot indices, not inventory indices) and the resulting carried stack, so the client
+ * can roll back only the slots it mispredicted.
  */
-public record SlotActionResponse(boolean accepted, int slotIndex) implements CustomPacketPayload {
+public record SlotActionResponse(boolean accepted, int slotIndex, int sequence,
+                                 List<SharedInventorySyncPayload.SlotUpdate> slots,
+                                 ItemStack carried) implements CustomPacketPayload {
     public static final CustomPacketPayload.Type<SlotActionResponse> TYPE =
             new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("omnipackmod", "slot_action_response"));
 
-    public static final StreamCodec<io.netty.buffer.ByteBuf, SlotActionResponse> STREAM_CODEC =
+    public static final StreamCodec<RegistryFriendlyByteBuf, SlotActionResponse> STREAM_CODEC =
             StreamCodec.composite(
                     ByteBufCodecs.BOOL, SlotActionResponse::accepted,
                     ByteBufCodecs.INT, SlotActionResponse::slotIndex,
+                    ByteBufCodecs.VAR_INT, SlotActionResponse::sequence,
+                    SharedInventorySyncPayload.SlotUpdate.STREAM_CODEC.apply(ByteBufCodecs.list()), SlotActionResponse::slots,
+                    ItemStack.OPTIONAL_STREAM_CODEC, SlotActionResponse::carried,
                     SlotActionResponse::new
             );
 
@@ -23,4 +35,4 @@ public record SlotActionResponse(boolean accepted, int slotIndex) implements Cus
     public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
         return TYPE;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package net.errantwanderer.omnipackmod.persistence;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import com.mojang.serialization.Codec;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.minecraft.core.UUIDUtil;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.saveddata.SavedDataType;
+
+/**
+ * Which inventory group each player belongs to.
+ *
+ * - Players without an entry are in the default group
+ * - Small and rarely changed, so it is saved by vanilla autosave through setDirty()
+ */
+public class GroupMembershipSavedData extends SavedData {
+    public static final String ID = OmniPackMod.MOD_ID + "_groups";
+
+    public static final Codec<GroupMembershipSavedData> CODEC =
+            Codec.unboundedMap(UUIDUtil.STRING_CODEC, Codec.STRING)
+                    .xmap(GroupMembershipSavedData::new, data -> data.groupByPlayer);
+
+    public static final SavedDataType<GroupMembershipSavedData> TYPE =
+            new SavedDataType<>(ID, GroupMembershipSavedData::new, CODEC, null);
+
+    private final Map<UUID, String> groupByPlayer;
+
+    public GroupMembershipSavedData() {
+        this(Map.of());
+    }
+
+    public GroupMembershipSavedData(Map<UUID, String> groupByPlayer) {
+        this.groupByPlayer = new HashMap<>(groupByPlayer);
+    }
+
+    public String groupOf(UUID player, String fallback) {
+        return groupByPlayer.getOrDefault(player, fallback);
+    }
+
+    public void setGroup(UUID player, String group, String defaultGroup) {
+        String previous = defaultGroup.equals(group) ? groupByPlayer.remove(player) : groupByPlayer.put(player, group);
+        if (!group.equals(previous == null ? defaultGroup : previous)) {
+            setDirty();
+        }
+    }
+
+    /**
+     * Every group that has at least one member, sorted.
+     */
+    public Set<String> groupNames() {
+        return new TreeSet<>(groupByPlayer.values());
+    }
+}
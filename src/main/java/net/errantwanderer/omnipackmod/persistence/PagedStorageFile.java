@@ -0,0 +1,189 @@
+package net.errantwanderer.omnipackmod.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.RegistryOps;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * On-disk and cold in-memory form of the paged shared storage.
+ *
+ * - A page is a compact blob: uncompressed NBT holding only its non-empty slots
+ *   (SharedInventorySavedData.SlotEntry, so items are stored by registry name, not network id)
+ * - An empty page is null and costs nothing
+ * - The file is a header followed by one length-prefixed blob per page; it is read once at
+ *   server start and pages stay blobs until someone actually needs them
+ * - Writes happen on a daemon thread, coalesced and atomically renamed like SharedInventoryWriter
+ */
+public class PagedStorageFile {
+    private static final int MAGIC = 0x4F505331; // "OPS1"
+    private static final int VERSION = 1;
+
+    private final Path target;
+    private final AtomicReference<byte[][]> pending = new AtomicReference<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OmniPack-Storage");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public PagedStorageFile(Path target) {
+        this.target = target;
+    }
+
+    /**
+     * Reads every page blob, padded or cut to {@code pageCount}. A missing file is an empty storage.
+     */
+    public byte[][] load(int pageCount) throws IOException {
+        byte[][] pages = new byte[pageCount][];
+        if (!Files.exists(target)) return pages;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(target)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a paged storage file: " + target);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("unsupported paged storage version " + version);
+
+            int stored = in.readInt();
+            for (int page = 0; page < stored; page++) {
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) throw new IOException("corrupt page length " + length + " in " + target);
+                byte[] blob = length > 0 ? in.readNBytes(length) : null;
+                if (blob != null && blob.length < length) throw new IOException("truncated page " + page + " in " + target);
+                if (page < pageCount) {
+                    pages[page] = blob;
+                } else if (blob != null) {
+                    OmniPackMod.LOGGER.warn("OmniPackMod: storage page {} in {} is beyond the configured page count and was not loaded",
+                            page, target);
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Moves an unreadable file out of the way (to file.unreadable) so an empty storage can start
+     * without overwriting it. Returns where it went.
+     */
+    public Path setAside() throws IOException {
+        Path aside = target.resolveSibling(target.getFileName() + ".unreadable");
+        Files.move(target, aside, StandardCopyOption.REPLACE_EXISTING);
+        return aside;
+    }
+
+    /**
+     * Queues a write of the given blobs. Blobs are immutable, so a shallow copy of the array is enough.
+     */
+    public void submit(byte[][] pages) {
+        if (pending.getAndSet(pages) == null) {
+            executor.execute(this::drain);
+        }
+    }
+
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] storage writer did not finish within 10s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+
+    private void drain() {
+        byte[][] pages = pending.getAndSet(null);
+        if (pages == null) return;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(pages.length);
+                for (byte[] blob : pages) {
+                    out.writeInt(blob != null ? blob.length : 0);
+                    if (blob != null) out.write(blob);
+                }
+            }
+            AtomicFiles.write(target, bytes.toByteArray());
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.error("[OmniPackMod] failed to save paged storage to {}", target, e);
+        }
+    }
+
+    /* -------------------------
+       Page blobs
+       ------------------------- */
+
+    /**
+     * Encodes one page; returns null if every slot is empty.
+     */
+    @Nullable
+    public static byte[] encodePage(List<ItemStack> slots, HolderLookup.Provider registries) throws IOException {
+        List<SharedInventorySavedData.SlotEntry> entries = new ArrayList<>();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            ItemStack stack = slots.get(slot);
+            if (!stack.isEmpty()) {
+                entries.add(new SharedInventorySavedData.SlotEntry(slot, stack));
+            }
+        }
+        if (entries.isEmpty()) return null;
+
+        RegistryOps<Tag> ops = registries.createSerializationContext(NbtOps.INSTANCE);
+        CompoundTag root = new CompoundTag();
+        root.put("Items", SharedInventorySavedData.SlotEntry.CODEC.listOf().encodeStart(ops, entries).getOrThrow());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            NbtIo.write(root, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a page blob into {@code out}, which must already be cleared. Unreadable entries are skipped.
+     */
+    public static void decodePage(@Nullable byte[] blob, List<ItemStack> out, HolderLookup.Provider registries) throws IOException {
+        if (blob == null) return;
+
+        CompoundTag root;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob))) {
+            root = NbtIo.read(in);
+        }
+        Tag items = root.get("Items");
+        if (items == null) return;
+
+        RegistryOps<Tag> ops = registries.createSerializationContext(NbtOps.INSTANCE);
+        SharedInventorySavedData.SlotEntry.CODEC.listOf().parse(ops, items)
+                .resultOrPartial(error -> OmniPackMod.LOGGER.warn("OmniPackMod: dropped unreadable storage entries: {}", error))
+                .ifPresent(entries -> {
+                    for (SharedInventorySavedData.SlotEntry entry : entries) {
+                        if (entry.slot() >= 0 && entry.slot() < out.size()) {
+                            out.set(entry.slot(), entry.stack().copy());
+                        }
+                    }
+                });
+    }
+}
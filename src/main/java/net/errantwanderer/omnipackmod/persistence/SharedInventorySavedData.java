@@ -0,0 +1,103 @@
+package net.errantwanderer.omnipackmod.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.errantwanderer.omnipackmod.SharedInventoryGroups;
+import net.minecraft.core.NonNullList;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.saveddata.SavedDataType;
+
+/**
+ * World-level snapshot of the shared inventory.
+ *
+ * - Loaded through the overworld DimensionDataStorage at server start
+ * - Written by SharedInventoryWriter, never marked dirty here, so vanilla autosave
+ *   never rewrites it on the tick thread
+ * - Only non-empty slots are stored
+ * - JournalSeq is the last TransactionJournal entry included, so startup replays only newer entries
+ * - One file per inventory group; the default group keeps the original ID so existing worlds load unchanged
+ */
+public class SharedInventorySavedData extends SavedData {
+    public static final String ID = OmniPackMod.MOD_ID + "_shared_inventory";
+
+    public static final Codec<SharedInventorySavedData> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            SlotEntry.CODEC.listOf().fieldOf("Items").forGetter(SharedInventorySavedData::entries),
+            Codec.LONG.optionalFieldOf("JournalSeq", 0L).forGetter(SharedInventorySavedData::journalSeq)
+    ).apply(instance, SharedInventorySavedData::new));
+
+    public static final SavedDataType<SharedInventorySavedData> TYPE =
+            new SavedDataType<>(ID, SharedInventorySavedData::new, CODEC, null);
+
+    // DimensionDataStorage caches by type, so hand out one instance per group
+    private static final Map<String, SavedDataType<SharedInventorySavedData>> GROUP_TYPES = new ConcurrentHashMap<>();
+
+    private final List<SlotEntry> entries;
+    private final long journalSeq;
+
+    public SharedInventorySavedData() {
+        this(List.of(), 0L);
+    }
+
+    public SharedInventorySavedData(List<SlotEntry> entries, long journalSeq) {
+        this.entries = List.copyOf(entries);
+        this.journalSeq = journalSeq;
+    }
+
+    public static String idFor(String group) {
+        return SharedInventoryGroups.DEFAULT_GROUP.equals(group) ? ID : ID + "_" + group;
+    }
+
+    public static SavedDataType<SharedInventorySavedData> typeFor(String group) {
+        if (SharedInventoryGroups.DEFAULT_GROUP.equals(group)) return TYPE;
+        return GROUP_TYPES.computeIfAbsent(group,
+                g -> new SavedDataType<>(idFor(g), SharedInventorySavedData::new, CODEC, null));
+    }
+
+    /**
+     * Copies the given slots; the result is safe to hand to another thread.
+     */
+    public static SharedInventorySavedData fromSlots(List<ItemStack> slots, long journalSeq) {
+        List<SlotEntry> entries = new ArrayList<>();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            ItemStack stack = slots.get(slot);
+            if (!stack.isEmpty()) {
+                entries.add(new SlotEntry(slot, stack.copy()));
+            }
+        }
+        return new SharedInventorySavedData(entries, journalSeq);
+    }
+
+    public List<SlotEntry> entries() {
+        return entries;
+    }
+
+    public long journalSeq() {
+        return journalSeq;
+    }
+
+    public void copyInto(NonNullList<ItemStack> target) {
+        for (int slot = 0; slot < target.size(); slot++) {
+            target.set(slot, ItemStack.EMPTY);
+        }
+        for (SlotEntry entry : entries) {
+            if (entry.slot() >= 0 && entry.slot() < target.size()) {
+                target.set(entry.slot(), entry.stack().copy());
+            }
+        }
+    }
+
+    public record SlotEntry(int slot, ItemStack stack) {
+        public static final Codec<SlotEntry> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                Codec.INT.fieldOf("Slot").forGetter(SlotEntry::slot),
+                ItemStack.CODEC.fieldOf("Item").forGetter(SlotEntry::stack)
+        ).apply(instance, SlotEntry::new));
+    }
+}
@@ -0,0 +1,98 @@
+package net.errantwanderer.omnipackmod.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.RegistryOps;
+
+/**
+ * Background writer for SharedInventorySavedData.
+ *
+ * - submit() is called from the tick thread with an already-copied snapshot and returns immediately
+ * - Snapshots submitted while a write is queued are coalesced; only the newest one is written
+ * - Encoding and disk I/O happen on a single daemon thread
+ * - Each write goes to a temp file, is fsynced, then atomically renamed over the real file,
+ *   so a crash leaves either the previous or the new snapshot, never a torn one
+ * - The duration of each encode + write is reported to {@code writeLatency}, on the writer thread
+ *
+ * The file layout matches what DimensionDataStorage expects, so the normal SavedData load path reads it.
+ */
+public class SharedInventoryWriter {
+    private final Path target;
+    private final HolderLookup.Provider registries;
+    private final LongConsumer writeLatency;
+    private final AtomicReference<SharedInventorySavedData> pending = new AtomicReference<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OmniPack-Persistence");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SharedInventoryWriter(Path target, HolderLookup.Provider registries, LongConsumer writeLatency) {
+        this.target = target;
+        this.registries = registries;
+        this.writeLatency = writeLatency;
+    }
+
+    public void submit(SharedInventorySavedData snapshot) {
+        if (pending.getAndSet(snapshot) == null) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Writes anything still pending and waits for the writer thread to finish.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] shared inventory writer did not finish within 10s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // anything submitted after the last queued drain still gets written
+        drain();
+    }
+
+    private void drain() {
+        SharedInventorySavedData snapshot = pending.getAndSet(null);
+        if (snapshot == null) return;
+
+        try {
+            long start = System.nanoTime();
+            writeAtomically(encode(snapshot));
+            writeLatency.accept(System.nanoTime() - start);
+        } catch (Exception e) {
+            OmniPackMod.LOGGER.error("[OmniPackMod] failed to save shared inventory to {}", target, e);
+        }
+    }
+
+    private CompoundTag encode(SharedInventorySavedData snapshot) {
+        RegistryOps<Tag> ops = registries.createSerializationContext(NbtOps.INSTANCE);
+        CompoundTag root = new CompoundTag();
+        root.put("data", SharedInventorySavedData.CODEC.encodeStart(ops, snapshot).getOrThrow());
+        NbtUtils.addCurrentDataVersion(root);
+        return root;
+    }
+
+    private void writeAtomically(CompoundTag root) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(root, bytes);
+        AtomicFiles.write(target, bytes.toByteArray());
+    }
+}
@@ -0,0 +1,428 @@
+package net.errantwanderer.omnipackmod.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.minecraft.Util;
+import net.minecraft.core.NonNullList;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.RegistryOps;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Append-only binary journal of every write applied to the shared inventory.
+ *
+ * File layout: a header (magic + version) followed by entries of
+ *   int bodyLength | body | int crc32(body)
+ * where body = kind, seq, timestamp, player UUID, varint slot, stack as NBT.
+ *
+ * - Stacks are stored through ItemStack.OPTIONAL_CODEC, by registry name like the SavedData,
+ *   never by network id: those ids shift when mods are added or removed
+ * - Entries are encoded on the tick thread into an in-memory buffer
+ * - flush() hands the buffered bytes to a background thread that appends and fsyncs them
+ * - A torn or corrupt tail (crash mid-write) is detected by length/CRC and truncated on open
+ * - Every journal file starts with a CHECKPOINT of all slots, so the state at any timestamp
+ *   inside the file can be rebuilt by replaying entries up to that timestamp
+ * - checkpointIfNeeded runs from the persist tick: once the file passes the size limit it is
+ *   rotated to file.old (one generation is kept) on the journal thread, and the new file starts
+ *   with a checkpoint; stateAt falls back to file.old for timestamps before that checkpoint
+ * - Files are read through the channel into heap buffers, never mapped, so truncating and
+ *   rotating also work on Windows
+ * - Sequence numbers keep counting across rotations; the SavedData snapshot stores the last
+ *   sequence it contains, so startup only replays what the snapshot missed. A journal never
+ *   numbers below that sequence: a new file (first start, or one set aside as outdated or
+ *   unreadable) continues from it, so its entries are not mistaken for ones already saved
+ * - The duration of each append + fsync is reported to {@code flushLatency}, on the journal thread
+ */
+public class TransactionJournal {
+    public static final byte PLAYER_WRITE = 0;
+    public static final byte CHECKPOINT = 1;
+    public static final byte ROLLBACK = 2;
+    // a slot overwritten with the replication primary's state
+    public static final byte REPLICATED = 3;
+
+    private static final int MAGIC = 0x4F504A31; // "OPJ1"
+    // 1 stored stacks by network id; such files are set aside on open, not replayed
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+
+    private final Path file;
+    private final RegistryOps<Tag> ops;
+    private final LongConsumer flushLatency;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OmniPack-Journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private FileChannel channel; // owned by the journal thread after open()
+    private final ByteBuf buffered = Unpooled.buffer();
+    private long lastSeq;
+    private boolean hasCheckpoint;
+    // size the current file will have once everything handed to the journal thread is written
+    private long fileSize;
+
+    private TransactionJournal(Path file, RegistryAccess registryAccess, LongConsumer flushLatency) {
+        this.file = file;
+        this.ops = registryAccess.createSerializationContext(NbtOps.INSTANCE);
+        this.flushLatency = flushLatency;
+    }
+
+    public interface SlotWriteConsumer {
+        void accept(int slot, ItemStack stack);
+    }
+
+    /**
+     * Opens (or creates) the journal, validates every entry and truncates a torn tail.
+     * {@code snapshotSeq} is the last sequence the SavedData snapshot contains; new entries are
+     * numbered above it.
+     */
+    public static TransactionJournal open(Path file, RegistryAccess registryAccess, long snapshotSeq, LongConsumer flushLatency) throws IOException {
+        TransactionJournal journal = new TransactionJournal(file, registryAccess, flushLatency);
+        Files.createDirectories(file.getParent());
+        setAsideIfOutdated(file);
+        journal.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (journal.channel.size() < HEADER_SIZE) {
+            journal.writeHeader();
+            journal.fileSize = HEADER_SIZE;
+            journal.lastSeq = snapshotSeq;
+        } else {
+            Scan scan = journal.scan(journal.readCurrent(), Long.MAX_VALUE, Long.MAX_VALUE, null);
+            long validEnd = scan.validEnd();
+            if (validEnd < journal.channel.size()) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] journal {} has a torn tail, truncating {} bytes",
+                        file, journal.channel.size() - validEnd);
+                journal.channel.truncate(validEnd);
+            }
+            journal.channel.position(validEnd);
+            // a file older than the snapshot (e.g. restored from a backup) must not reuse its numbers
+            journal.lastSeq = Math.max(scan.lastSeq(), snapshotSeq);
+            journal.hasCheckpoint = scan.hasCheckpoint();
+            journal.fileSize = validEnd;
+        }
+        return journal;
+    }
+
+    public long lastSequence() {
+        return lastSeq;
+    }
+
+    /**
+     * Replays every write with a sequence number above {@code afterSeq} (startup recovery).
+     * Returns the number of entries replayed.
+     */
+    public int replayAfter(long afterSeq, SlotWriteConsumer consumer) throws IOException {
+        int[] count = new int[1];
+        scan(readCurrent(), Long.MAX_VALUE, Long.MAX_VALUE, (kind, seq, ts, player, slot, stack) -> {
+            if (seq > afterSeq) {
+                consumer.accept(slot, stack);
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Rebuilds the slot contents as of {@code timestamp} into {@code out}, from this file or,
+     * if the timestamp predates its first checkpoint, from the previous generation.
+     * Returns false if neither reaches back that far.
+     */
+    public boolean stateAt(long timestamp, NonNullList<ItemStack> out) throws IOException {
+        awaitWrites();
+        if (stateAt(readCurrent(), timestamp, out)) return true;
+
+        Path previous = previousGeneration();
+        if (!Files.exists(previous)) return false;
+        for (int slot = 0; slot < out.size(); slot++) {
+            out.set(slot, ItemStack.EMPTY);
+        }
+        return stateAt(Unpooled.wrappedBuffer(Files.readAllBytes(previous)), timestamp, out);
+    }
+
+    private boolean stateAt(ByteBuf contents, long timestamp, NonNullList<ItemStack> out) throws IOException {
+        boolean[] covered = new boolean[1];
+        scan(contents, Long.MAX_VALUE, timestamp, (kind, seq, ts, player, slot, stack) -> {
+            if (kind == CHECKPOINT) covered[0] = true;
+            if (slot >= 0 && slot < out.size()) out.set(slot, stack);
+        });
+        return covered[0];
+    }
+
+    /**
+     * Starts a fresh file (keeping one previous generation) when this one has grown past
+     * {@code maxBytes}, or writes into this one if it has no checkpoint yet; either way the file
+     * then holds a checkpoint of {@code slots}. A size check when there is nothing to do, so it
+     * runs every persist tick; the file work happens on the journal thread.
+     */
+    public void checkpointIfNeeded(long maxBytes, List<ItemStack> slots, long timestamp) {
+        if (hasCheckpoint && fileSize <= maxBytes) return;
+
+        // whatever is buffered still belongs to the file being retired
+        flush();
+        boolean rotate = hasCheckpoint;
+        ByteBuf entries = Unpooled.buffer();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            encode(entries, CHECKPOINT, Util.NIL_UUID, slot, slots.get(slot), timestamp);
+        }
+        byte[] checkpoint = new byte[entries.readableBytes()];
+        entries.readBytes(checkpoint);
+        hasCheckpoint = true;
+        fileSize = (rotate ? HEADER_SIZE : fileSize) + checkpoint.length;
+
+        executor.execute(() -> {
+            if (rotate) {
+                try {
+                    startNewFile();
+                } catch (IOException e) {
+                    // a checkpoint in the middle of the old file is still a valid one
+                    OmniPackMod.LOGGER.error("[OmniPackMod] failed to rotate journal {}, continuing in it", file, e);
+                }
+            }
+            writeChunk(checkpoint);
+        });
+    }
+
+    /**
+     * Encodes one entry into the in-memory buffer. Tick thread only.
+     */
+    public void append(byte kind, UUID player, int slot, ItemStack stack, long timestamp) {
+        encode(buffered, kind, player, slot, stack, timestamp);
+    }
+
+    private void encode(ByteBuf target, byte kind, UUID player, int slot, ItemStack stack, long timestamp) {
+        ByteBuf body = Unpooled.buffer();
+        FriendlyByteBuf out = new FriendlyByteBuf(body);
+        out.writeByte(kind);
+        out.writeLong(++lastSeq);
+        out.writeLong(timestamp);
+        out.writeUUID(player);
+        out.writeVarInt(slot);
+        out.writeNbt(ItemStack.OPTIONAL_CODEC.encodeStart(ops, stack).getOrThrow());
+
+        CRC32 crc = new CRC32();
+        crc.update(body.nioBuffer());
+        target.writeInt(body.readableBytes());
+        target.writeBytes(body);
+        target.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * True while appended entries are still waiting for the next flush().
+     */
+    public boolean hasUnflushed() {
+        return buffered.isReadable();
+    }
+
+    /**
+     * Hands buffered entries to the journal thread, which appends and fsyncs them.
+     */
+    public Future<?> flush() {
+        if (!buffered.isReadable()) return null;
+
+        byte[] chunk = new byte[buffered.readableBytes()];
+        buffered.readBytes(chunk);
+        buffered.clear();
+        fileSize += chunk.length;
+
+        return executor.submit(() -> writeChunk(chunk));
+    }
+
+    public void close() {
+        flush();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] journal writer did not finish within 10s");
+            }
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] failed to close journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    /* -------------------------
+       Internals
+       ------------------------- */
+
+    private interface EntryVisitor {
+        void visit(byte kind, long seq, long timestamp, UUID player, int slot, ItemStack stack);
+    }
+
+    /**
+     * Flushes, then waits until the journal thread has finished everything handed to it,
+     * rotations included; afterwards the tick thread may read the files.
+     */
+    private void awaitWrites() throws IOException {
+        flush();
+        try {
+            executor.submit(() -> { }).get();
+        } catch (Exception e) {
+            throw new IOException("journal flush failed", e);
+        }
+    }
+
+    /**
+     * Journal thread: appends and fsyncs one chunk of encoded entries.
+     */
+    private void writeChunk(byte[] chunk) {
+        try {
+            long start = System.nanoTime();
+            ByteBuffer buf = ByteBuffer.wrap(chunk);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+            flushLatency.accept(System.nanoTime() - start);
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.error("[OmniPackMod] failed to append to journal {}", file, e);
+        }
+    }
+
+    /**
+     * Journal thread: moves the current file to the previous generation and opens a new one.
+     * If the move fails the current file stays open for appending.
+     */
+    private void startNewFile() throws IOException {
+        channel.close();
+        boolean moved = false;
+        try {
+            Files.move(file, previousGeneration(), StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (moved) {
+                writeHeader();
+            } else {
+                channel.position(channel.size());
+            }
+        }
+    }
+
+    private Path previousGeneration() {
+        return file.resolveSibling(file.getFileName() + ".old");
+    }
+
+    /**
+     * The whole current file, read through the channel into a heap buffer. Only while the
+     * journal thread is idle (open, or after awaitWrites).
+     */
+    private ByteBuf readCurrent() throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("journal too large to read: " + file);
+        ByteBuffer contents = ByteBuffer.allocate((int) size);
+        while (contents.hasRemaining()) {
+            if (channel.read(contents, contents.position()) < 0) break;
+        }
+        return Unpooled.wrappedBuffer(contents.array(), 0, contents.position());
+    }
+
+    /**
+     * Moves a journal written in an older format (to file.v<version>) or without a journal
+     * header (to file.unreadable) out of the way, so a fresh one is started. Its entries are not
+     * replayed; the SavedData snapshot stands.
+     */
+    private static void setAsideIfOutdated(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) return;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            in.read(header, 0);
+        }
+        if (header.position() < HEADER_SIZE) return;
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic == MAGIC && version == VERSION) return;
+
+        Path aside = file.resolveSibling(file.getFileName() + (magic == MAGIC ? ".v" + version : ".unreadable"));
+        OmniPackMod.LOGGER.warn("[OmniPackMod] journal {} is not in format {}, moving it to {} and starting a new one", file, VERSION, aside);
+        Files.move(file, aside, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * What a scan found: the offset just past the last valid entry, the highest sequence number
+     * and whether there was a checkpoint.
+     */
+    private record Scan(long validEnd, long lastSeq, boolean hasCheckpoint) { }
+
+    /**
+     * Walks a journal file's contents, visiting entries up to {@code maxSeq} / {@code maxTimestamp}.
+     */
+    private Scan scan(ByteBuf in, long maxSeq, long maxTimestamp, EntryVisitor visitor) throws IOException {
+        if (in.readableBytes() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("not an OmniPack journal: " + file);
+        }
+
+        long validEnd = HEADER_SIZE;
+        long maxSeen = 0L;
+        boolean sawCheckpoint = false;
+        while (in.readableBytes() >= 4) {
+            int length = in.readInt();
+            if (length <= 0 || in.readableBytes() < length + 4) break;
+
+            ByteBuf body = in.readSlice(length);
+            int storedCrc = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(body.nioBuffer());
+            if ((int) crc.getValue() != storedCrc) break;
+
+            FriendlyByteBuf entry = new FriendlyByteBuf(body);
+            byte kind = entry.readByte();
+            long seq = entry.readLong();
+            long timestamp = entry.readLong();
+            UUID player = entry.readUUID();
+            int slot = entry.readVarInt();
+            ItemStack stack;
+            try {
+                stack = ItemStack.OPTIONAL_CODEC.parse(ops, entry.readNbt(NbtAccounter.unlimitedHeap())).getOrThrow();
+            } catch (RuntimeException e) {
+                // the entry itself is intact (CRC matched); its item just no longer exists
+                OmniPackMod.LOGGER.warn("[OmniPackMod] journal entry {} has an unreadable stack, treating as empty: {}", seq, e.getMessage());
+                stack = ItemStack.EMPTY;
+            }
+
+            validEnd = in.readerIndex();
+            maxSeen = Math.max(maxSeen, seq);
+            if (kind == CHECKPOINT) sawCheckpoint = true;
+
+            if (visitor != null && seq <= maxSeq && timestamp <= maxTimestamp) {
+                visitor.visit(kind, seq, timestamp, player, slot, stack);
+            }
+        }
+
+        return new Scan(validEnd, maxSeen, sawCheckpoint);
+    }
+}
@@ -0,0 +1,11 @@
+package net.errantwanderer.omnipackmod.replication;
+
+/**
+ * This server's part in cross-server replication (replicationRole).
+ *
+ * - OFF: shared inventories are local to this server
+ * - PRIMARY: authoritative for every group; applies replicas' writes and publishes the result
+ * - REPLICA: applies its players' writes locally, forwards them to the primary and adopts
+ *   whatever the primary decides
+ */
+public enum ReplicationRole { OFF, PRIMARY, REPLICA }
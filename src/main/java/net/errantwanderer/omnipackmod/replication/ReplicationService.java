@@ -0,0 +1,360 @@
+package net.errantwanderer.omnipackmod.replication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.Unpooled;
+import net.errantwanderer.omnipackmod.Config;
+import net.errantwanderer.omnipackmod.DirtySlotTracker;
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.errantwanderer.omnipackmod.SharedInventoryGroups;
+import net.errantwanderer.omnipackmod.SharedInventoryManager;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.network.connection.ConnectionType;
+
+/**
+ * One team inventory across several servers: replicates every group's shared slots between a
+ * primary and any number of replicas over a ReplicationTransport.
+ *
+ * - The primary is authoritative. A replica applies its players' writes locally right away and
+ *   forwards each one to the primary as (requested, base, base version); the primary queues it
+ *   like a local write, so a write based on a stale version is merged by count delta or
+ *   rejected exactly as between two players on one server. A rejection goes back to every
+ *   replica (REJECTED, after the delta that resets the slot), and the one the writer is on
+ *   undoes the rest of the move in their menu, so the items are not kept on both sides. A
+ *   replica coalesces writes per slot, so a run by several players is undone on its first writer
+ * - The primary publishes every committed slot as (slot, version, stack), tagged with its epoch
+ *   (a random id per server run, since versions restart with the server). A replica orders
+ *   each slot by version, drops older deltas, and overwrites its own state with the primary's
+ * - On connect (and for every group it opens later) a replica first sends whatever it wrote
+ *   while disconnected, then asks for a snapshot of the group; deltas from an epoch it has no
+ *   snapshot of are ignored until the snapshot arrives
+ * - Work is batched per tick: one WRITES frame per group from a replica, one DELTAS frame per
+ *   group from the primary
+ *
+ * Group membership and the paged storage are not replicated; configure them on each server.
+ * Transport callbacks only queue events; everything else runs on the server thread in tick().
+ */
+public final class ReplicationService implements ReplicationTransport.Listener {
+    private static final byte WRITES = 0;
+    private static final byte SNAPSHOT_REQUEST = 1;
+    private static final byte DELTAS = 2;
+    private static final byte SNAPSHOT = 3;
+    private static final byte REJECTED = 4;
+    private static final int MAX_GROUP_LENGTH = 32;
+
+    private final MinecraftServer server;
+    private final SharedInventoryGroups groups;
+    private final ReplicationRole role;
+    private final ReplicationTransport transport;
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    // primary: connected replicas
+    private final Set<String> replicas = new HashSet<>();
+    // replica: the primary's connection, null while disconnected
+    @Nullable
+    private String primary;
+    // replica: groups a snapshot was requested for on the current connection
+    private final Set<String> snapshotRequested = new HashSet<>();
+
+    private ReplicationService(MinecraftServer server, SharedInventoryGroups groups, ReplicationRole role, ReplicationTransport transport) {
+        this.server = server;
+        this.groups = groups;
+        this.role = role;
+        this.transport = transport;
+    }
+
+    /**
+     * Starts replication as configured, over TCP. Returns null if it is off or misconfigured.
+     */
+    @Nullable
+    public static ReplicationService start(MinecraftServer server, SharedInventoryGroups groups) {
+        ReplicationRole role = Config.REPLICATION_ROLE.get();
+        if (role == ReplicationRole.OFF) return null;
+        String secret = Config.REPLICATION_SECRET.get();
+        if (secret.isEmpty()) {
+            OmniPackMod.LOGGER.warn("OmniPackMod: replicationRole is {} but replicationSecret is empty, replication stays off", role);
+            return null;
+        }
+
+        try {
+            ReplicationTransport transport = role == ReplicationRole.PRIMARY
+                    ? new TcpReplicationTransport(parseAddress(Config.REPLICATION_LISTEN.get()), null, secret)
+                    : new TcpReplicationTransport(null, parseAddress(Config.REPLICATION_PRIMARY.get()), secret);
+            return start(server, groups, role, transport);
+        } catch (IllegalArgumentException | IOException e) {
+            OmniPackMod.LOGGER.error("OmniPackMod: could not start replication as {}", role, e);
+            return null;
+        }
+    }
+
+    /**
+     * Starts replication over any transport.
+     */
+    public static ReplicationService start(MinecraftServer server, SharedInventoryGroups groups, ReplicationRole role,
+                                           ReplicationTransport transport) throws IOException {
+        ReplicationService service = new ReplicationService(server, groups, role, transport);
+        transport.start(service);
+        OmniPackMod.LOGGER.info("OmniPackMod: replication started as {}", role);
+        return service;
+    }
+
+    static InetSocketAddress parseAddress(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("expected host:port, got " + hostAndPort);
+        return new InetSocketAddress(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)));
+    }
+
+    public void stop() {
+        transport.close();
+    }
+
+    /* -------------------------
+       Transport callbacks (transport threads)
+       ------------------------- */
+
+    @Override
+    public void onConnected(String peer) {
+        events.add(new Event(Event.CONNECTED, peer, null));
+    }
+
+    @Override
+    public void onMessage(String peer, byte[] frame) {
+        events.add(new Event(Event.MESSAGE, peer, frame));
+    }
+
+    @Override
+    public void onDisconnected(String peer) {
+        events.add(new Event(Event.DISCONNECTED, peer, null));
+    }
+
+    private record Event(int kind, String peer, byte[] frame) {
+        static final int CONNECTED = 0;
+        static final int MESSAGE = 1;
+        static final int DISCONNECTED = 2;
+    }
+
+    /* -------------------------
+       Server thread
+       ------------------------- */
+
+    /**
+     * Call once per server tick, after the shared inventory tick: applies what arrived, then
+     * sends this tick's batch.
+     */
+    public void tick() {
+        Event event;
+        while ((event = events.poll()) != null) {
+            switch (event.kind()) {
+                case Event.CONNECTED -> onPeerConnected(event.peer());
+                case Event.DISCONNECTED -> onPeerDisconnected(event.peer());
+                default -> receive(event.peer(), event.frame());
+            }
+        }
+
+        if (role == ReplicationRole.PRIMARY) {
+            publishChanges();
+        } else if (primary != null) {
+            sendWrites();
+        }
+    }
+
+    private void onPeerConnected(String peer) {
+        if (role == ReplicationRole.PRIMARY) {
+            replicas.add(peer);
+        } else {
+            primary = peer;
+            snapshotRequested.clear();
+        }
+    }
+
+    private void onPeerDisconnected(String peer) {
+        if (role == ReplicationRole.PRIMARY) {
+            replicas.remove(peer);
+        } else if (peer.equals(primary)) {
+            // writes made from now on wait in the managers' outboxes until the primary is back
+            primary = null;
+            snapshotRequested.clear();
+        }
+    }
+
+    private void publishChanges() {
+        for (SharedInventoryManager manager : groups.all()) {
+            long mask = manager.drainReplicationChanges();
+            // nobody to tell: replicas take a snapshot when they connect
+            if (mask != 0L && !replicas.isEmpty()) {
+                transport.broadcast(slotsFrame(DELTAS, manager, mask));
+            }
+
+            // after the deltas, which already reset the rejected slots
+            int rejected = manager.replicationRejectionCount();
+            if (rejected > 0) {
+                RegistryFriendlyByteBuf buf = newFrame(REJECTED, manager.getGroupId());
+                buf.writeVarInt(rejected);
+                manager.drainReplicationRejections((player, slot, requested, base, baseVersion) -> {
+                    buf.writeVarInt(slot);
+                    buf.writeUUID(player);
+                    ItemStack.OPTIONAL_STREAM_CODEC.encode(buf, base);
+                    ItemStack.OPTIONAL_STREAM_CODEC.encode(buf, requested);
+                });
+                if (replicas.isEmpty()) {
+                    buf.release();
+                } else {
+                    transport.broadcast(toBytes(buf));
+                }
+            }
+        }
+    }
+
+    private void sendWrites() {
+        for (SharedInventoryManager manager : groups.all()) {
+            int count = manager.replicationOutboxSize();
+            if (count > 0) {
+                RegistryFriendlyByteBuf buf = newFrame(WRITES, manager.getGroupId());
+                buf.writeVarInt(count);
+                manager.drainReplicationOutbox((player, slot, requested, base, baseVersion) -> {
+                    buf.writeVarInt(slot);
+                    buf.writeUUID(player);
+                    buf.writeVarLong(baseVersion);
+                    ItemStack.OPTIONAL_STREAM_CODEC.encode(buf, base);
+                    ItemStack.OPTIONAL_STREAM_CODEC.encode(buf, requested);
+                });
+                transport.send(primary, toBytes(buf));
+            }
+            // after the writes: the primary answers in order, so its delta for them follows the snapshot
+            if (snapshotRequested.add(manager.getGroupId())) {
+                transport.send(primary, toBytes(newFrame(SNAPSHOT_REQUEST, manager.getGroupId())));
+            }
+        }
+    }
+
+    private void receive(String peer, byte[] frame) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.wrappedBuffer(frame), server.registryAccess(), ConnectionType.OTHER);
+        try {
+            byte type = buf.readByte();
+            String group = buf.readUtf(MAX_GROUP_LENGTH);
+            if (!SharedInventoryGroups.isValidName(group)) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] replication peer {} sent invalid group name {}", peer, group);
+                return;
+            }
+
+            switch (type) {
+                case WRITES -> {
+                    if (role == ReplicationRole.PRIMARY) receiveWrites(groups.getOrCreate(group), buf);
+                }
+                case SNAPSHOT_REQUEST -> {
+                    if (role == ReplicationRole.PRIMARY) {
+                        transport.send(peer, slotsFrame(SNAPSHOT, groups.getOrCreate(group), DirtySlotTracker.ALL_SLOTS));
+                    }
+                }
+                case DELTAS, SNAPSHOT -> {
+                    SharedInventoryManager manager = groups.get(group);
+                    // a group nobody here has opened yet is fetched whole once it is
+                    if (role == ReplicationRole.REPLICA && manager != null) receiveSlots(manager, buf, type == SNAPSHOT);
+                }
+                case REJECTED -> {
+                    SharedInventoryManager manager = groups.get(group);
+                    if (role == ReplicationRole.REPLICA && manager != null) receiveRejections(manager, buf);
+                }
+                default -> OmniPackMod.LOGGER.warn("[OmniPackMod] replication peer {} sent unknown frame type {}", peer, type);
+            }
+        } catch (RuntimeException e) {
+            OmniPackMod.LOGGER.warn("[OmniPackMod] dropped malformed replication frame from {}: {}", peer, e.getMessage());
+        }
+    }
+
+    private static void receiveWrites(SharedInventoryManager manager, RegistryFriendlyByteBuf buf) {
+        int count = buf.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int slot = buf.readVarInt();
+            UUID player = buf.readUUID();
+            long baseVersion = buf.readVarLong();
+            ItemStack base = ItemStack.OPTIONAL_STREAM_CODEC.decode(buf);
+            ItemStack requested = ItemStack.OPTIONAL_STREAM_CODEC.decode(buf);
+            manager.queueReplicatedWrite(player, slot, requested, base, baseVersion);
+        }
+    }
+
+    private static void receiveRejections(SharedInventoryManager manager, RegistryFriendlyByteBuf buf) {
+        int count = buf.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int slot = buf.readVarInt();
+            UUID player = buf.readUUID();
+            ItemStack base = ItemStack.OPTIONAL_STREAM_CODEC.decode(buf);
+            ItemStack requested = ItemStack.OPTIONAL_STREAM_CODEC.decode(buf);
+            manager.undoReplicatedWrite(player, slot, requested, base);
+        }
+    }
+
+    private void receiveSlots(SharedInventoryManager manager, RegistryFriendlyByteBuf buf, boolean snapshot) {
+        long epoch = buf.readLong();
+        int count = buf.readVarInt();
+        if (snapshot) {
+            long[] versions = new long[SharedInventoryManager.SHARED_SLOT_COUNT];
+            ItemStack[] stacks = new ItemStack[SharedInventoryManager.SHARED_SLOT_COUNT];
+            Arrays.fill(stacks, ItemStack.EMPTY);
+            for (int i = 0; i < count; i++) {
+                int slot = buf.readVarInt();
+                long version = buf.readVarLong();
+                ItemStack stack = ItemStack.OPTIONAL_STREAM_CODEC.decode(buf);
+                if (slot >= 0 && slot < stacks.length) {
+                    versions[slot] = version;
+                    stacks[slot] = stack;
+                }
+            }
+            manager.applyReplicatedSnapshot(epoch, versions, stacks);
+            OmniPackMod.LOGGER.info("[OmniPackMod] group {} resynced from replication primary", manager.getGroupId());
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int slot = buf.readVarInt();
+            long version = buf.readVarLong();
+            ItemStack stack = ItemStack.OPTIONAL_STREAM_CODEC.decode(buf);
+            if (!manager.applyReplicatedDelta(epoch, slot, version, stack)) {
+                // before the first snapshot it is already on its way; a snapshot of another
+                // epoch is outdated, so ask again. Either one replaces everything in this frame
+                if (manager.getReplicatedEpoch() != 0L) snapshotRequested.remove(manager.getGroupId());
+                return;
+            }
+        }
+    }
+
+    private byte[] slotsFrame(byte type, SharedInventoryManager manager, long slotMask) {
+        RegistryFriendlyByteBuf buf = newFrame(type, manager.getGroupId());
+        buf.writeLong(manager.getReplicationEpoch());
+        buf.writeVarInt(Long.bitCount(slotMask));
+        long mask = slotMask;
+        while (mask != 0L) {
+            int slot = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1L;
+            buf.writeVarInt(slot);
+            buf.writeVarLong(manager.getSlotVersion(slot));
+            ItemStack.OPTIONAL_STREAM_CODEC.encode(buf, manager.getSharedStack(slot));
+        }
+        return toBytes(buf);
+    }
+
+    private RegistryFriendlyByteBuf newFrame(byte type, String group) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.buffer(), server.registryAccess(), ConnectionType.OTHER);
+        buf.writeByte(type);
+        buf.writeUtf(group, MAX_GROUP_LENGTH);
+        return buf;
+    }
+
+    private static byte[] toBytes(RegistryFriendlyByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        buf.release();
+        return bytes;
+    }
+}
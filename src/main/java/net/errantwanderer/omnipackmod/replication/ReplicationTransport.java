@@ -0,0 +1,35 @@
+package net.errantwanderer.omnipackmod.replication;
+
+import java.io.IOException;
+
+/**
+ * Moves opaque replication frames between servers. ReplicationService decides what the frames
+ * mean; a transport only has to deliver each peer's frames whole and in order, and report
+ * connects and disconnects.
+ *
+ * Listener methods are called on the transport's own threads; send methods may be called from
+ * any thread and must not block on the network.
+ */
+public interface ReplicationTransport {
+    interface Listener {
+        void onConnected(String peer);
+
+        void onMessage(String peer, byte[] frame);
+
+        void onDisconnected(String peer);
+    }
+
+    void start(Listener listener) throws IOException;
+
+    /**
+     * Queues a frame for one peer; dropped if that peer is not connected.
+     */
+    void send(String peer, byte[] frame);
+
+    /**
+     * Queues a frame for every connected peer.
+     */
+    void broadcast(byte[] frame);
+
+    void close();
+}
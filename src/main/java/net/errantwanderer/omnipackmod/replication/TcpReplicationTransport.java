@@ -0,0 +1,307 @@
+package net.errantwanderer.omnipackmod.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.errantwanderer.omnipackmod.OmniPackMod;
+
+/**
+ * ReplicationTransport over plain TCP: the primary listens, replicas dial it. Two servers on
+ * one machine (listen and primary both 127.0.0.1:port) are the loopback test setup.
+ *
+ * - Frames are an int length followed by that many bytes, at most MAX_FRAME_BYTES
+ * - Both ends open with MAGIC, PROTOCOL and a random nonce, then prove they know the shared
+ *   secret with an HMAC-SHA256 over both nonces: the dialer first, and the listener only once
+ *   the dialer's proof checks out. The secret itself never crosses the wire, and each side's
+ *   proof has its own label, so a proof cannot be reflected back. Frames after the handshake
+ *   are neither encrypted nor signed, so this still belongs on a private network
+ * - Every connection has a reader thread and a writer thread fed by a bounded queue; a peer
+ *   too slow to drain SEND_QUEUE_FRAMES frames is disconnected rather than buffered without
+ *   bound (it resyncs when it reconnects)
+ * - A replica redials after a disconnect, backing off from RECONNECT_MIN_MS to RECONNECT_MAX_MS
+ */
+public final class TcpReplicationTransport implements ReplicationTransport {
+    private static final int MAGIC = 0x4F505231; // "OPR1"
+    private static final int PROTOCOL = 2;
+    private static final int NONCE_BYTES = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] DIALER_LABEL = "omnipack-replication dialer".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LISTENER_LABEL = "omnipack-replication listener".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_FRAME_BYTES = 4 * 1024 * 1024;
+    private static final int SEND_QUEUE_FRAMES = 1024;
+    private static final long RECONNECT_MIN_MS = 1_000L;
+    private static final long RECONNECT_MAX_MS = 30_000L;
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    // a peer that stalls mid-handshake does not get to hold a thread forever
+    private static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    @Nullable
+    private final InetSocketAddress listenAddress;
+    @Nullable
+    private final InetSocketAddress primaryAddress;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private volatile boolean closed = false;
+    private Listener listener;
+    private ServerSocket serverSocket;
+    private Thread dialer;
+
+    /**
+     * {@code listenAddress} for the primary, {@code primaryAddress} for a replica.
+     */
+    public TcpReplicationTransport(@Nullable InetSocketAddress listenAddress, @Nullable InetSocketAddress primaryAddress, String secret) {
+        this.listenAddress = listenAddress;
+        this.primaryAddress = primaryAddress;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+    }
+
+    @Override
+    public void start(Listener listener) throws IOException {
+        this.listener = listener;
+        if (listenAddress != null) {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(listenAddress);
+            daemon("OmniPack-Replication-Accept", this::acceptLoop).start();
+        }
+        if (primaryAddress != null) {
+            dialer = daemon("OmniPack-Replication-Dial", this::dialLoop);
+            dialer.start();
+        }
+    }
+
+    @Override
+    public void send(String peer, byte[] frame) {
+        Connection connection = connections.get(peer);
+        if (connection != null) connection.enqueue(frame);
+    }
+
+    @Override
+    public void broadcast(byte[] frame) {
+        for (Connection connection : connections.values()) {
+            connection.enqueue(frame);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        if (dialer != null) dialer.interrupt();
+        for (Connection connection : connections.values()) {
+            connection.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                daemon("OmniPack-Replication-Peer", () -> serve(socket, false)).start();
+            } catch (IOException e) {
+                if (!closed) OmniPackMod.LOGGER.warn("[OmniPackMod] replication accept failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void dialLoop() {
+        long backoff = RECONNECT_MIN_MS;
+        while (!closed) {
+            boolean connected = false;
+            try {
+                Socket socket = new Socket();
+                socket.connect(primaryAddress, CONNECT_TIMEOUT_MS);
+                connected = true;
+                serve(socket, true);
+            } catch (IOException e) {
+                OmniPackMod.LOGGER.debug("[OmniPackMod] replication primary {} unreachable: {}", primaryAddress, e.getMessage());
+            }
+            if (closed) return;
+            backoff = connected ? RECONNECT_MIN_MS : Math.min(backoff * 2L, RECONNECT_MAX_MS);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handshake, then reads frames until the connection ends. Runs on the calling thread.
+     * {@code dialed} is true on the side that opened the connection.
+     */
+    private void serve(Socket socket, boolean dialed) {
+        String peer = socket.getRemoteSocketAddress() + "#" + connectionIds.incrementAndGet();
+        Connection connection = null;
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            if (!handshake(in, out, socket, dialed)) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] replication peer {} failed the handshake (other protocol or wrong secret), closing", peer);
+                return;
+            }
+
+            connection = new Connection(peer, socket, out);
+            connections.put(peer, connection);
+            daemon("OmniPack-Replication-Send", connection::writeLoop).start();
+            OmniPackMod.LOGGER.info("[OmniPackMod] replication peer {} connected", peer);
+            listener.onConnected(peer);
+
+            while (!closed) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    OmniPackMod.LOGGER.warn("[OmniPackMod] replication peer {} sent a {} byte frame, closing", peer, length);
+                    return;
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                listener.onMessage(peer, frame);
+            }
+        } catch (IOException e) {
+            if (!closed) OmniPackMod.LOGGER.info("[OmniPackMod] replication peer {} disconnected: {}", peer, e.getMessage());
+        } finally {
+            if (connection != null) {
+                connections.remove(peer);
+                connection.close();
+                listener.onDisconnected(peer);
+            } else {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Nonce exchange and mutual HMAC proof. Returns false on a protocol or proof mismatch; the
+     * listener sends nothing derived from the secret to a dialer that failed its proof.
+     */
+    private boolean handshake(DataInputStream in, DataOutputStream out, Socket socket, boolean dialed) throws IOException {
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        byte[] ourNonce = new byte[NONCE_BYTES];
+        random.nextBytes(ourNonce);
+        out.writeInt(MAGIC);
+        out.writeInt(PROTOCOL);
+        out.write(ourNonce);
+        out.flush();
+        if (in.readInt() != MAGIC || in.readInt() != PROTOCOL) return false;
+        byte[] theirNonce = new byte[NONCE_BYTES];
+        in.readFully(theirNonce);
+
+        byte[] dialerNonce = dialed ? ourNonce : theirNonce;
+        byte[] listenerNonce = dialed ? theirNonce : ourNonce;
+        byte[] dialerProof = proof(DIALER_LABEL, dialerNonce, listenerNonce);
+        byte[] listenerProof = proof(LISTENER_LABEL, dialerNonce, listenerNonce);
+        byte[] received = new byte[dialerProof.length];
+        if (dialed) {
+            out.write(dialerProof);
+            out.flush();
+            in.readFully(received);
+            if (!MessageDigest.isEqual(listenerProof, received)) return false;
+        } else {
+            in.readFully(received);
+            if (!MessageDigest.isEqual(dialerProof, received)) return false;
+            out.write(listenerProof);
+            out.flush();
+        }
+        socket.setSoTimeout(0);
+        return true;
+    }
+
+    private byte[] proof(byte[] label, byte[] dialerNonce, byte[] listenerNonce) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(label);
+            mac.update(dialerNonce);
+            mac.update(listenerNonce);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            // every Java runtime ships HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Connection {
+        // wakes the writer so it notices close()
+        private static final byte[] CLOSE = new byte[0];
+
+        private final String peer;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(SEND_QUEUE_FRAMES);
+        private volatile boolean open = true;
+
+        Connection(String peer, Socket socket, DataOutputStream out) {
+            this.peer = peer;
+            this.socket = socket;
+            this.out = out;
+        }
+
+        void enqueue(byte[] frame) {
+            if (open && !queue.offer(frame)) {
+                OmniPackMod.LOGGER.warn("[OmniPackMod] replication peer {} is not keeping up, disconnecting it", peer);
+                close();
+            }
+        }
+
+        void writeLoop() {
+            try {
+                while (open) {
+                    byte[] frame = queue.take();
+                    if (frame == CLOSE) break;
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                    if (queue.isEmpty()) out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        void close() {
+            open = false;
+            queue.clear();
+            queue.offer(CLOSE);
+            closeQuietly(socket);
+        }
+    }
+}
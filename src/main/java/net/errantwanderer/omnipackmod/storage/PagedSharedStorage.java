@@ -0,0 +1,238 @@
+package net.errantwanderer.omnipackmod.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import net.errantwanderer.omnipackmod.Config;
+import net.errantwanderer.omnipackmod.ItemSlotIndex;
+import net.errantwanderer.omnipackmod.OmniPackMod;
+import net.errantwanderer.omnipackmod.persistence.PagedStorageFile;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.NonNullList;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * A group's warehouse: thousands of shared slots beyond the 41 mirrored inventory slots,
+ * split into chest-sized pages.
+ *
+ * - Cold pages are compact blobs (see PagedStorageFile); an empty page is null
+ * - A page is decoded only when a menu shows it, and re-encoded and dropped once nobody has
+ *   viewed it for storagePageIdleTicks
+ * - Clients only ever receive the page they are looking at, through the normal menu slot sync
+ *   of SharedStorageMenu
+ * - An ItemSlotIndex covers every slot, cold pages included (built once at open), so insert()
+ *   and count() never scan or decode pages that cannot take the item
+ * - Changed pages are re-encoded and written in the background at most every persistIntervalTicks
+ *
+ * Server thread only.
+ */
+public class PagedSharedStorage {
+    public static final int PAGE_SIZE = 54; // one 6-row chest screen
+    private static final int EVICT_CHECK_INTERVAL_TICKS = 100;
+
+    private final HolderLookup.Provider registries;
+    private final PagedStorageFile file;
+    private final byte[][] coldPages;
+    private final Int2ObjectMap<StoragePage> hotPages = new Int2ObjectOpenHashMap<>();
+    private final ItemSlotIndex index;
+    // cold blobs changed since the last submit to the file
+    private boolean persistDirty = false;
+    private long tickCounter = 0L;
+    private long lastPersistTick = 0L;
+
+    private PagedSharedStorage(PagedStorageFile file, byte[][] coldPages, HolderLookup.Provider registries) {
+        this.file = file;
+        this.coldPages = coldPages;
+        this.registries = registries;
+        this.index = new ItemSlotIndex(coldPages.length * PAGE_SIZE);
+
+        NonNullList<ItemStack> scratch = NonNullList.withSize(PAGE_SIZE, ItemStack.EMPTY);
+        for (int page = 0; page < coldPages.length; page++) {
+            if (coldPages[page] == null) continue;
+            try {
+                PagedStorageFile.decodePage(coldPages[page], scratch, registries);
+            } catch (IOException e) {
+                OmniPackMod.LOGGER.error("OmniPackMod: storage page {} is unreadable and shows empty", page, e);
+            }
+            for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                index.set(page * PAGE_SIZE + slot, scratch.get(slot));
+                scratch.set(slot, ItemStack.EMPTY);
+            }
+        }
+    }
+
+    /**
+     * Loads the storage at {@code path}. An unreadable file is moved aside and the storage starts
+     * empty; if it cannot even be moved, returns null and the group runs without storage rather
+     * than overwrite it.
+     */
+    @Nullable
+    public static PagedSharedStorage open(Path path, int pageCount, HolderLookup.Provider registries) {
+        PagedStorageFile file = new PagedStorageFile(path);
+        byte[][] pages;
+        try {
+            pages = file.load(pageCount);
+        } catch (IOException e) {
+            try {
+                Path aside = file.setAside();
+                OmniPackMod.LOGGER.error("OmniPackMod: could not read paged storage {}, moved it to {} and starting empty", path, aside, e);
+                pages = new byte[pageCount][];
+            } catch (IOException moveFailed) {
+                OmniPackMod.LOGGER.error("OmniPackMod: could not read paged storage {} nor move it aside, storage is off for this group",
+                        path, e);
+                return null;
+            }
+        }
+        return new PagedSharedStorage(file, pages, registries);
+    }
+
+    public int pageCount() {
+        return coldPages.length;
+    }
+
+    public int loadedPageCount() {
+        return hotPages.size();
+    }
+
+    /**
+     * Returns the page for a new viewer, decoding it if needed. Pair with release().
+     */
+    StoragePage acquire(int pageIndex) {
+        StoragePage page = page(pageIndex);
+        page.viewers++;
+        page.lastUsedTick = tickCounter;
+        return page;
+    }
+
+    void release(StoragePage page) {
+        page.viewers--;
+        page.lastUsedTick = tickCounter;
+    }
+
+    StoragePage page(int pageIndex) {
+        StoragePage page = hotPages.get(pageIndex);
+        if (page != null) return page;
+
+        page = new StoragePage(pageIndex);
+        try {
+            PagedStorageFile.decodePage(coldPages[pageIndex], page.getItems(), registries);
+        } catch (IOException e) {
+            OmniPackMod.LOGGER.error("OmniPackMod: storage page {} is unreadable and shows empty", pageIndex, e);
+        }
+        page.lastUsedTick = tickCounter;
+        // menus mutate stacks in place and then call setChanged, so re-read the whole page then
+        StoragePage changed = page;
+        page.addListener(container -> reindex(changed));
+        hotPages.put(pageIndex, page);
+        return page;
+    }
+
+    private void reindex(StoragePage page) {
+        int base = page.index * PAGE_SIZE;
+        for (int slot = 0; slot < PAGE_SIZE; slot++) {
+            index.set(base + slot, page.getItem(slot));
+        }
+    }
+
+    /**
+     * Puts a stack into the warehouse: onto existing stacks of the same item first, then into the
+     * first empty slots, decoding only the pages actually written. Returns what did not fit;
+     * {@code stack} itself is not modified.
+     */
+    public ItemStack insert(ItemStack stack) {
+        if (stack.isEmpty()) return ItemStack.EMPTY;
+        int remaining = stack.getCount();
+        int maxSize = stack.getMaxStackSize();
+
+        for (int slot = index.nextPartialSlot(stack, 0); remaining > 0 && slot >= 0; slot = index.nextPartialSlot(stack, slot + 1)) {
+            StoragePage page = page(slot / PAGE_SIZE);
+            ItemStack current = page.getItem(slot % PAGE_SIZE);
+            int moved = Math.min(remaining, maxSize - current.getCount());
+            if (moved <= 0) continue;
+            page.setItem(slot % PAGE_SIZE, current.copyWithCount(current.getCount() + moved));
+            remaining -= moved;
+        }
+        for (int slot = index.nextEmptySlot(0); remaining > 0 && slot >= 0; slot = index.nextEmptySlot(slot + 1)) {
+            int moved = Math.min(remaining, maxSize);
+            page(slot / PAGE_SIZE).setItem(slot % PAGE_SIZE, stack.copyWithCount(moved));
+            remaining -= moved;
+        }
+        return remaining > 0 ? stack.copyWithCount(remaining) : ItemStack.EMPTY;
+    }
+
+    public long count(ItemStack stack) {
+        return index.count(stack);
+    }
+
+    public long count(Item item) {
+        return index.count(item);
+    }
+
+    public boolean needsTick() {
+        return persistDirty || !hotPages.isEmpty();
+    }
+
+    public void onServerTick() {
+        tickCounter++;
+
+        if (tickCounter % EVICT_CHECK_INTERVAL_TICKS == 0) {
+            evictIdlePages();
+        }
+        if (tickCounter - lastPersistTick >= Config.PERSIST_INTERVAL_TICKS.get()) {
+            persist();
+            lastPersistTick = tickCounter;
+        }
+    }
+
+    /**
+     * Writes everything out and waits for it; call on server stop.
+     */
+    public void close() {
+        persist();
+        file.close();
+        hotPages.clear();
+    }
+
+    private void evictIdlePages() {
+        long idleTicks = Config.STORAGE_PAGE_IDLE_TICKS.get();
+        ObjectIterator<Int2ObjectMap.Entry<StoragePage>> it = hotPages.int2ObjectEntrySet().iterator();
+        while (it.hasNext()) {
+            StoragePage page = it.next().getValue();
+            if (page.viewers > 0 || tickCounter - page.lastUsedTick < idleTicks) continue;
+            if (encode(page)) it.remove();
+        }
+    }
+
+    private void persist() {
+        for (StoragePage page : hotPages.values()) {
+            encode(page);
+        }
+        if (persistDirty) {
+            file.submit(coldPages.clone());
+            persistDirty = false;
+        }
+    }
+
+    /**
+     * Folds a dirty hot page back into its blob. False if encoding failed and the page must stay hot.
+     */
+    private boolean encode(StoragePage page) {
+        if (!page.dirty) return true;
+        try {
+            coldPages[page.index] = PagedStorageFile.encodePage(page.getItems(), registries);
+            page.dirty = false;
+            persistDirty = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            OmniPackMod.LOGGER.error("OmniPackMod: could not encode storage page {}", page.index, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package net.errantwanderer.omnipackmod.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.errantwanderer.omnipackmod.OmniPackMenus;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.Container;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.SimpleMenuProvider;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.ChestMenu;
+import net.minecraft.world.inventory.ContainerData;
+import net.minecraft.world.inventory.SimpleContainerData;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Chest-style menu over one page of a group's PagedSharedStorage at a time.
+ *
+ * - The menu's 54 container slots point at a PageView, so switching pages just re-targets the
+ *   view and vanilla menu sync sends the new page's slots
+ * - Page index and count travel as data slots; menu buttons 0/1 flip pages
+ * - On the client the view wraps a plain SimpleContainer that vanilla fills from the server
+ */
+public class SharedStorageMenu extends ChestMenu {
+    public static final int BUTTON_PREVIOUS_PAGE = 0;
+    public static final int BUTTON_NEXT_PAGE = 1;
+
+    private final PageView view;
+    private final ContainerData pageData;
+
+    // client-side constructor, used by the MenuType
+    public SharedStorageMenu(int containerId, Inventory playerInventory) {
+        this(containerId, playerInventory, new PageView(null, new SimpleContainer(PagedSharedStorage.PAGE_SIZE)),
+                new SimpleContainerData(2));
+    }
+
+    private SharedStorageMenu(int containerId, Inventory playerInventory, PageView view, ContainerData pageData) {
+        super(OmniPackMenus.SHARED_STORAGE.get(), containerId, playerInventory, view, PagedSharedStorage.PAGE_SIZE / 9);
+        this.view = view;
+        this.pageData = pageData;
+        addDataSlots(pageData);
+    }
+
+    public static void open(ServerPlayer player, PagedSharedStorage storage, int page) {
+        int clamped = Math.max(0, Math.min(page, storage.pageCount() - 1));
+        player.openMenu(new SimpleMenuProvider((containerId, playerInventory, p) -> {
+            PageView view = new PageView(storage, storage.acquire(clamped));
+            return new SharedStorageMenu(containerId, playerInventory, view, view);
+        }, Component.translatable("container.omnipackmod.shared_storage")));
+    }
+
+    public int getPage() {
+        return pageData.get(0);
+    }
+
+    public int getPageCount() {
+        return pageData.get(1);
+    }
+
+    @Override
+    public boolean clickMenuButton(Player player, int id) {
+        if (view.storage == null) return false;
+
+        int target = switch (id) {
+            case BUTTON_PREVIOUS_PAGE -> view.pageIndex() - 1;
+            case BUTTON_NEXT_PAGE -> view.pageIndex() + 1;
+            default -> -1;
+        };
+        if (target < 0 || target >= view.storage.pageCount()) return false;
+
+        view.show(view.storage.acquire(target));
+        return true;
+    }
+
+    /**
+     * Shift-click from the player's inventory stores into the whole warehouse (merging through
+     * the storage index), not just the page on screen. The client still predicts the vanilla
+     * page-only move; the server's result overwrites it through normal menu sync.
+     */
+    @Override
+    public ItemStack quickMoveStack(Player player, int index) {
+        if (view.storage == null || index < PagedSharedStorage.PAGE_SIZE) {
+            return super.quickMoveStack(player, index);
+        }
+
+        Slot slot = slots.get(index);
+        if (!slot.hasItem()) return ItemStack.EMPTY;
+
+        ItemStack moving = slot.getItem();
+        ItemStack remainder = view.storage.insert(moving);
+        if (remainder.getCount() != moving.getCount()) {
+            slot.setByPlayer(remainder);
+            slot.setChanged();
+        }
+        // everything that fit has moved in one go, so stop vanilla's repeat loop
+        return ItemStack.EMPTY;
+    }
+
+    /**
+     * The container behind the menu slots: forwards to whichever page is shown and doubles as
+     * the page data slots on the server.
+     */
+    private static final class PageView implements Container, ContainerData {
+        @Nullable
+        private final PagedSharedStorage storage;
+        private Container page;
+
+        PageView(@Nullable PagedSharedStorage storage, Container page) {
+            this.storage = storage;
+            this.page = page;
+        }
+
+        int pageIndex() {
+            return page instanceof StoragePage storagePage ? storagePage.index : 0;
+        }
+
+        void show(StoragePage next) {
+            if (page instanceof StoragePage previous) {
+                storage.release(previous);
+            }
+            page = next;
+        }
+
+        @Override
+        public void stopOpen(Player player) {
+            if (page instanceof StoragePage current && storage != null) {
+                storage.release(current);
+            }
+        }
+
+        @Override
+        public int getContainerSize() {
+            return PagedSharedStorage.PAGE_SIZE;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return page.isEmpty();
+        }
+
+        @Override
+        public ItemStack getItem(int slot) {
+            return page.getItem(slot);
+        }
+
+        @Override
+        public ItemStack removeItem(int slot, int amount) {
+            return page.removeItem(slot, amount);
+        }
+
+        @Override
+        public ItemStack removeItemNoUpdate(int slot) {
+            return page.removeItemNoUpdate(slot);
+        }
+
+        @Override
+        public void setItem(int slot, ItemStack stack) {
+            page.setItem(slot, stack);
+        }
+
+        @Override
+        public void setChanged() {
+            page.setChanged();
+        }
+
+        @Override
+        public boolean stillValid(Player player) {
+            return true;
+        }
+
+        @Override
+        public void clearContent() {
+            page.clearContent();
+        }
+
+        @Override
+        public int get(int index) {
+            return switch (index) {
+                case 0 -> pageIndex();
+                case 1 -> storage != null ? storage.pageCount() : 0;
+                default -> 0;
+            };
+        }
+
+        @Override
+        public void set(int index, int value) {
+            // server-side view is read-only
+        }
+
+        @Override
+        public int getCount() {
+            return 2;
+        }
+    }
+}
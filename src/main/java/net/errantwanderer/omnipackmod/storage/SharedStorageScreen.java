@@ -0,0 +1,42 @@
+package net.errantwanderer.omnipackmod.storage;
+
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.gui.components.Button;
+import net.minecraft.client.gui.screens.inventory.ContainerScreen;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.entity.player.Inventory;
+
+/**
+ * Vanilla chest screen plus page buttons and a page counter for SharedStorageMenu.
+ * Page flips are plain menu button clicks; the server swaps the page and syncs its slots.
+ */
+public class SharedStorageScreen extends ContainerScreen {
+    private final SharedStorageMenu storageMenu;
+
+    public SharedStorageScreen(SharedStorageMenu menu, Inventory playerInventory, Component title) {
+        super(menu, playerInventory, title);
+        this.storageMenu = menu;
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+        addRenderableWidget(Button.builder(Component.literal("<"), b -> pressPageButton(SharedStorageMenu.BUTTON_PREVIOUS_PAGE))
+                .bounds(leftPos + imageWidth - 36, topPos + 3, 14, 12).build());
+        addRenderableWidget(Button.builder(Component.literal(">"), b -> pressPageButton(SharedStorageMenu.BUTTON_NEXT_PAGE))
+                .bounds(leftPos + imageWidth - 20, topPos + 3, 14, 12).build());
+    }
+
+    @Override
+    protected void renderLabels(GuiGraphics graphics, int mouseX, int mouseY) {
+        super.renderLabels(graphics, mouseX, mouseY);
+        String page = (storageMenu.getPage() + 1) + "/" + Math.max(1, storageMenu.getPageCount());
+        graphics.drawString(font, page, imageWidth - 40 - font.width(page), titleLabelY, 0xFF404040, false);
+    }
+
+    private void pressPageButton(int id) {
+        if (minecraft != null && minecraft.gameMode != null) {
+            minecraft.gameMode.handleInventoryButtonClick(storageMenu.containerId, id);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.errantwanderer.omnipackmod.storage;
+
+import net.minecraft.world.SimpleContainer;
+
+/**
+ * A decoded ("hot") page of the paged shared storage.
+ *
+ * Every menu showing this page reads and writes the same instance, so concurrent viewers stay
+ * consistent and vanilla menu sync sends each of them only the slots that changed.
+ */
+final class StoragePage extends SimpleContainer {
+    final int index;
+    int viewers;
+    long lastUsedTick;
+    // changed since it was last encoded into a blob
+    boolean dirty;
+
+    StoragePage(int index) {
+        super(PagedSharedStorage.PAGE_SIZE);
+        this.index = index;
+    }
+
+    @Override
+    public void setChanged() {
+        super.setChanged();
+        dirty = true;
+    }
+}